@@ -0,0 +1,164 @@
+import bench.Workloads;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+// Workloads for bench.ChatBenchmarks, built from the server's own classes. Per-message paths
+// run on a ChatServer with the transcript off, so they measure the request path rather than the disk.
+public class BenchmarkWorkloads implements Workloads {
+    private static final String LONG_INPUT =
+            "x".repeat(40) + " pesan panjang yang tidak cocok dengan aturan apa pun " + "y".repeat(40);
+    // Four times the default cache size, cycled, so even the cached run misses every time
+    private static final String[] KEYWORD_INPUTS = new String[4 * 1024];
+
+    static {
+        for (int i = 0; i < KEYWORD_INPUTS.length; i++) {
+            KEYWORD_INPUTS[i] = "boleh tahu siapa nama kamu " + i;
+        }
+    }
+
+    // Log batches are folded in here, standing in for the log view
+    private volatile int sink;
+
+    @Override
+    public Op response(String input, int cacheSize) {
+        String[] inputs = switch (input) {
+            case "exact" -> new String[]{"halo"};
+            case "keyword" -> KEYWORD_INPUTS;
+            case "long" -> new String[]{LONG_INPUT};
+            default -> throw new IllegalArgumentException("Unknown input: " + input);
+        };
+        ClientHandler handler = newHandler(benchServer(cacheSize));
+        int[] next = {0};
+        return () -> {
+            handler.handleLine(inputs[next[0]++ & (inputs.length - 1)]);
+            return handler;
+        };
+    }
+
+    // ChatServer.log publishes into the pipeline; publish() is safe to call from many threads
+    @Override
+    public Op logPublish() {
+        LogPipeline pipeline = new LogPipeline(8192, 50, batch -> sink += batch.length());
+        return () -> pipeline.publish("Client 42 says: halo");
+    }
+
+    @Override
+    public Op clientInfo() {
+        ClientTransport transport = new StubTransport(new InetSocketAddress("127.0.0.1", 50123));
+        int[] id = {0};
+        return () -> ClientHandler.describe(++id[0] & 1023, transport);
+    }
+
+    @Override
+    public Op wireEncode() {
+        String reply = "Halo juga! Senang bertemu dengan Anda.";
+        return () -> EncodedLine.of(reply);
+    }
+
+    @Override
+    public Op wireDecode(boolean framed) {
+        // A buffer of 32 lines is decoded per 32 ops
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 32; i++) {
+            String message = "Client says: halo apa kabar " + i;
+            bytes.writeBytes(framed ? WireFrame.encode(WireFrame.MESSAGE, message)
+                    : (message + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        ByteBuffer wire = ByteBuffer.wrap(bytes.toByteArray());
+        LineDecoder decoder = new LineDecoder();
+        if (framed) {
+            decoder.decode(ByteBuffer.wrap((WireFrame.MARKER + "\n").getBytes(StandardCharsets.UTF_8)), line -> {});
+        }
+        int[] pending = {0};
+        String[] last = new String[1];
+        Consumer<String> lines = line -> {
+            last[0] = line;
+            pending[0]++;
+        };
+        return () -> {
+            if (pending[0] == 0) {
+                wire.rewind();
+                decoder.decode(wire, lines);
+            }
+            pending[0]--;
+            return last[0];
+        };
+    }
+
+    // Decoded in place, logged, answered from the cache and written by the reading thread
+    @Override
+    public Op requestPath() {
+        ClientHandler handler = newHandler(benchServer(1024));
+        String[] inputs = {"halo", "apa kabar", "terima kasih", "help"};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 32; i++) {
+            bytes.writeBytes((inputs[i & 3] + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        ByteBuffer wire = ByteBuffer.wrap(bytes.toByteArray());
+        LineDecoder decoder = new LineDecoder();
+        int[] pending = {0};
+        LineDecoder.LineSink lines = line -> {
+            handler.handleLine(line);
+            pending[0]++;
+        };
+        return () -> {
+            if (pending[0] == 0) {
+                wire.rewind();
+                decoder.decodeInPlace(wire, lines);
+            }
+            pending[0]--;
+            return handler;
+        };
+    }
+
+    private static ClientHandler newHandler(ChatServer server) {
+        return new ClientHandler(new StubTransport(new InetSocketAddress("127.0.0.1", 50123)), server);
+    }
+
+    private static ChatServer benchServer(int cacheSize) {
+        Properties props = new Properties();
+        props.setProperty("chat.journal.enabled", "false");
+        props.setProperty("chat.pacing", "none");
+        props.setProperty("chat.cache.size", String.valueOf(cacheSize));
+        ChatServer server = new ChatServer(0, new ServerConfig(props), new ChatServer.Listener() {});
+        try {
+            server.initialize();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return server;
+    }
+
+    private record StubTransport(SocketAddress address) implements ClientTransport {
+        @Override
+        public void write(EncodedLine line) {
+        }
+
+        @Override
+        public boolean writesInline() {
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return address;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
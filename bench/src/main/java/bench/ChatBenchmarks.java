@@ -0,0 +1,110 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Microbenchmarks for the per-message hot paths. Run them with -prof gc, as exec:exec does:
+// gc.alloc.rate.norm is the bytes allocated per message, and a rise between runs is a new
+// allocation on the per-message path.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatBenchmarks {
+    private static final Workloads WORKLOADS = Workloads.load();
+
+    @State(Scope.Thread)
+    public static class Response {
+        @Param({"exact", "keyword", "long"})
+        public String input;
+
+        @Param({"1024", "0"})
+        public int cacheSize;
+
+        Workloads.Op op;
+
+        @Setup
+        public void setUp() {
+            op = WORKLOADS.response(input, cacheSize);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Log {
+        Workloads.Op op;
+
+        @Setup
+        public void setUp() {
+            op = WORKLOADS.logPublish();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Wire {
+        Workloads.Op clientInfo;
+        Workloads.Op encode;
+        Workloads.Op decode;
+        Workloads.Op decodeFramed;
+
+        @Setup
+        public void setUp() {
+            clientInfo = WORKLOADS.clientInfo();
+            encode = WORKLOADS.wireEncode();
+            decode = WORKLOADS.wireDecode(false);
+            decodeFramed = WORKLOADS.wireDecode(true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        Workloads.Op op;
+
+        @Setup
+        public void setUp() {
+            op = WORKLOADS.requestPath();
+        }
+    }
+
+    @Benchmark
+    public Object response(Response state) {
+        return state.op.run();
+    }
+
+    @Benchmark
+    public Object logPublish(Log state) {
+        return state.op.run();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object logPublishContended(Log state) {
+        return state.op.run();
+    }
+
+    @Benchmark
+    public Object clientInfo(Wire state) {
+        return state.clientInfo.run();
+    }
+
+    @Benchmark
+    public Object wireEncode(Wire state) {
+        return state.encode.run();
+    }
+
+    @Benchmark
+    public Object wireDecode(Wire state) {
+        return state.decode.run();
+    }
+
+    @Benchmark
+    public Object wireDecodeFramed(Wire state) {
+        return state.decodeFramed.run();
+    }
+
+    @Benchmark
+    public Object requestPath(Request state) {
+        return state.op.run();
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Compares two JMH JSON result files and exits with status 1 if any benchmark's throughput
+// dropped more than the allowed percentage below the baseline:
+//
+//   java -cp bench/target/benchmarks.jar bench.CompareResults baseline.json bench/target/jmh-result.json 10
+public class CompareResults {
+    private static final Pattern BENCHMARK = Pattern.compile("\"benchmark\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern THREADS = Pattern.compile("\"threads\"\\s*:\\s*(\\d+)");
+    private static final Pattern PARAMS = Pattern.compile("\"params\"\\s*:\\s*\\{([^}]*)}");
+    private static final Pattern SCORE = Pattern.compile("\"primaryMetric\"\\s*:\\s*\\{\\s*\"score\"\\s*:\\s*([0-9.eE+-]+)");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <results.json> [max regression %, default 10]");
+            System.exit(2);
+        }
+        int maxRegression = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        if (!compare(scores(Files.readString(Path.of(args[0]))), scores(Files.readString(Path.of(args[1]))),
+                maxRegression)) {
+            System.exit(1);
+        }
+    }
+
+    // Benchmarks present in both files only; false if any got slower than allowed
+    static boolean compare(Map<String, Double> baseline, Map<String, Double> results, int maxRegressionPercent) {
+        boolean ok = true;
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            Double before = baseline.get(result.getKey());
+            if (before == null || before <= 0) {
+                continue;
+            }
+            double change = (result.getValue() - before) / before * 100;
+            boolean regressed = change < -maxRegressionPercent;
+            System.out.printf(Locale.ROOT, "%-72s %+8.1f%%%s%n", result.getKey(), change,
+                    regressed ? "  REGRESSION" : "");
+            ok &= !regressed;
+        }
+        return ok;
+    }
+
+    // "name{params}@threads" -> primary score, one per entry of a JMH JSON array
+    static Map<String, Double> scores(String json) {
+        Map<String, Double> scores = new TreeMap<>();
+        for (String entry : json.split("\"jmhVersion\"")) {
+            Matcher name = BENCHMARK.matcher(entry);
+            Matcher threads = THREADS.matcher(entry);
+            Matcher score = SCORE.matcher(entry);
+            if (!name.find() || !threads.find() || !score.find()) {
+                continue;
+            }
+            Matcher params = PARAMS.matcher(entry);
+            String key = name.group(1) + (params.find() ? "{" + params.group(1).replaceAll("\\s+", "") + "}" : "")
+                    + "@" + threads.group(1);
+            scores.put(key, Double.parseDouble(score.group(1)));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,35 @@
+package bench;
+
+// The measured code, set up by BenchmarkWorkloads. The server's classes live in the default
+// package, which JMH does not accept for benchmark classes and which code in a named package
+// cannot refer to, so the two meet through this interface.
+public interface Workloads {
+    // One operation of a benchmark; only logPublish() may be shared between threads
+    interface Op {
+        Object run();
+    }
+
+    // One message through ClientHandler.handleLine: "exact", "keyword" or "long" input, with
+    // a reply cache of the given size (0 disables it)
+    Op response(String input, int cacheSize);
+
+    Op logPublish();
+
+    Op clientInfo();
+
+    Op wireEncode();
+
+    // One line per op, as text or as frames on a negotiated connection
+    Op wireDecode(boolean framed);
+
+    // One message from a connected client, as the blocking engines handle it
+    Op requestPath();
+
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkWorkloads is not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Admin console on a loopback port for headless servers, e.g. `nc localhost 5001`.
+// Each line is an @-command; its replies and the log lines it produced are written back.
+public class AdminConsole {
+    private final ChatServer server;
+    private final ServerSocket socket;
+    private volatile boolean running = true;
+
+    public AdminConsole(ChatServer server, int port) throws IOException {
+        this.server = server;
+        this.socket = new ServerSocket();
+        socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "AdminConsole");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket session = socket.accept();
+                Thread.ofVirtual().name("AdminSession").start(() -> serve(session));
+            } catch (IOException e) {
+                if (running) {
+                    server.log("Admin console error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket session) {
+        server.log("Admin console connected from " + session.getRemoteSocketAddress());
+        try (session;
+             BufferedReader in = new BufferedReader(new InputStreamReader(session.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(session.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            ChatServer.CommandOutput output = new ChatServer.CommandOutput() {
+                @Override
+                public void reply(String text) {
+                    synchronized (out) {
+                        out.println(text);
+                    }
+                }
+
+                @Override
+                public boolean echoLog() {
+                    return true;
+                }
+            };
+            output.reply("ChatBot admin console, type @help for commands or 'quit' to leave");
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.equalsIgnoreCase("quit") || line.equalsIgnoreCase("exit")) {
+                    break;
+                }
+                server.command(line, output);
+            }
+        } catch (IOException e) {
+            server.log("Admin console error: " + e.getMessage());
+        }
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    public void close() {
+        running = false;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
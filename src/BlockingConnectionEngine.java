@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One blocking reader per client, on platform threads ("thread") or virtual threads ("virtual")
+public class BlockingConnectionEngine implements ConnectionEngine {
+    private static final long PLATFORM_STACK_BYTES = 1024 * 1024;
+    private static final long VIRTUAL_STACK_BYTES = 4 * 1024;
+    // Idle read buffers kept for the next connections
+    private static final int POOLED_READ_BUFFERS = 1024;
+
+    private final String name;
+    private final ChatServer server;
+    private final ExecutorService clientPool;
+    private final AtomicInteger readers = new AtomicInteger();
+    private final BufferPool readBuffers = new BufferPool(SocketTransport.READ_BUFFER_SIZE, POOLED_READ_BUFFERS, false);
+    private ServerSocket ss;
+    private volatile boolean running;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public BlockingConnectionEngine(String name, ChatServer server, ExecutorService clientPool) {
+        this.name = name;
+        this.server = server;
+        this.clientPool = clientPool;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        ss = new ServerSocket(port);
+        running = true;
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (running && !ss.isClosed()) {
+            try {
+                Socket client = ss.accept();
+
+                // Only counted, not logged: a flood would otherwise flood the log too
+                if (!server.admitConnection(client.getInetAddress())) {
+                    server.reject(client, ChatServer.RATE_LIMITED_MESSAGE);
+                    continue;
+                }
+                if (!server.hasCapacity()) {
+                    server.getMetrics().rejectedFull.increment();
+                    server.log("Server reached maximum clients limit. " +
+                            "Rejecting connection from: " + client.getInetAddress().getHostAddress());
+                    server.reject(client, ChatServer.SERVER_FULL_MESSAGE);
+                    continue;
+                }
+
+                server.getMetrics().accepted.increment();
+                server.enableKeepAlive(client);
+                server.log("Client connected : " + client.getRemoteSocketAddress());
+                SocketTransport transport = new SocketTransport(client, server.getMetrics().bytesIn, readBuffers);
+                // No read timeout: idle connections are reaped by the server's IdleTracker
+                ClientHandler handler = new ClientHandler(transport, server);
+                server.addClient(handler);
+                clientPool.submit(() -> readLoop(handler, transport));
+            } catch (IOException e) {
+                if (running && !ss.isClosed()) {
+                    server.log("Connection Error: " + e.getMessage());
+                }
+            }
+        }
+        // After stopAccepting() the clients are still being served until stop()
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readLoop(ClientHandler handler, SocketTransport transport) {
+        Thread.currentThread().setName("ClientHandler-" + handler.getClientID());
+        readers.incrementAndGet();
+        try {
+            handler.start();
+            LineReader lines = new LineReader(handler);
+            while (lines.open && handler.isConnected() && transport.read(lines)) {
+                // Lines are handled as they are decoded
+            }
+        } catch (IOException e) {
+            if (handler.isConnected()) {
+                server.log("Client " + handler.getClientID() + " connection error: " + e.getMessage());
+            }
+        } catch (Exception e) {
+            server.log("Unexpected error with client " + handler.getClientID() + ": " + e.getMessage());
+        } finally {
+            readers.decrementAndGet();
+            handler.closeConnection();
+            transport.release();
+        }
+    }
+
+    // Feeds decoded lines to the handler until it asks for the connection to close
+    private static class LineReader implements LineDecoder.LineSink {
+        private final ClientHandler handler;
+        private boolean open = true;
+
+        LineReader(ClientHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void accept(CharSequence line) {
+            if (open && !handler.handleLine(line)) {
+                open = false;
+            }
+        }
+    }
+
+    @Override
+    public void stopAccepting() throws IOException {
+        if (ss != null && !ss.isClosed()) {
+            ss.close();
+        }
+    }
+
+    @Override
+    public void stop() throws IOException {
+        running = false;
+        stopped.countDown();
+        try {
+            stopAccepting();
+        } finally {
+            clientPool.shutdown();
+            if (!clientPool.isTerminated()) {
+                clientPool.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public long estimateBytesPerConnection() {
+        long stack = name.equals("virtual") ? VIRTUAL_STACK_BYTES : PLATFORM_STACK_BYTES;
+        return stack + SocketTransport.BUFFER_BYTES;
+    }
+
+    @Override
+    public BufferPool getBufferPool() {
+        return readBuffers;
+    }
+
+    // Virtual threads have no pool to ask, so count the readers instead
+    @Override
+    public PoolStats getPoolStats() {
+        PoolStats stats = PoolStats.of(clientPool);
+        if (stats != null) {
+            return stats;
+        }
+        int active = readers.get();
+        return new PoolStats(active, active, 0);
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Encodes a broadcast once and queues the same bytes on every client's outbound queue.
+// Each client's writer delivers independently, so a slow receiver only delays itself;
+// the outcome is logged once every client has either received or failed the line.
+public class BroadcastFanout {
+    private static final long PROGRESS_REPORT_SECONDS = 5;
+
+    private final ChatServer server;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public BroadcastFanout(ChatServer server, ScheduledExecutorService timer) {
+        this.server = server;
+        this.timer = timer;
+    }
+
+    public Broadcast send(Collection<ClientHandler> targets, String message) {
+        EncodedLine line = EncodedLine.of("[SERVER BROADCAST] " + message);
+        Broadcast broadcast = new Broadcast(sequence.incrementAndGet(), targets.size(), message);
+        for (ClientHandler ch : targets) {
+            ch.enqueue(line, broadcast);
+        }
+        broadcast.checkDone();
+        if (!broadcast.isDone()) {
+            timer.schedule(broadcast::reportProgress, PROGRESS_REPORT_SECONDS, TimeUnit.SECONDS);
+        }
+        return broadcast;
+    }
+
+    public class Broadcast implements ClientHandler.Delivery {
+        private final int id;
+        private final int total;
+        private final String message;
+        private final AtomicInteger delivered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger reported = new AtomicInteger();
+
+        private Broadcast(int id, int total, String message) {
+            this.id = id;
+            this.total = total;
+            this.message = message;
+        }
+
+        @Override
+        public void delivered() {
+            delivered.incrementAndGet();
+            checkDone();
+        }
+
+        @Override
+        public void failed() {
+            failed.incrementAndGet();
+            checkDone();
+        }
+
+        private void checkDone() {
+            if (isDone() && reported.compareAndSet(0, 1)) {
+                server.log("Broadcast #" + id + " finished: delivered " + delivered.get() +
+                        ", failed " + failed.get() + " of " + total + ": " + message);
+            }
+        }
+
+        private void reportProgress() {
+            if (!isDone()) {
+                server.log("Broadcast #" + id + " in progress: delivered " + delivered.get() +
+                        ", failed " + failed.get() + ", pending " + getPending());
+            }
+        }
+
+        public boolean isDone() {
+            return delivered.get() + failed.get() >= total;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getPending() {
+            return Math.max(0, total - delivered.get() - failed.get());
+        }
+    }
+}
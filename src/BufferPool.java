@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Same-sized ByteBuffers recycled between connections, so connection churn and steady
+// traffic reuse the same memory. acquire() never blocks: an empty pool allocates a new
+// buffer, and buffers released while the pool is full are left to the GC.
+public class BufferPool {
+    private final int bufferSize;
+    private final boolean direct;
+    private final ByteBuffer[] free;
+    private int size;
+    // A lock rather than synchronized, so a virtual thread never pins its carrier here
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.free = new ByteBuffer[maxPooled];
+    }
+
+    // Cleared and ready to fill
+    public ByteBuffer acquire() {
+        ByteBuffer buf = null;
+        lock.lock();
+        try {
+            if (size > 0) {
+                buf = free[--size];
+                free[size] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (buf == null) {
+            allocated.increment();
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        reused.increment();
+        return buf.clear();
+    }
+
+    // Only buffers from this pool are taken back; the caller must not touch buf afterwards
+    public void release(ByteBuffer buf) {
+        if (buf == null || buf.capacity() != bufferSize || buf.isDirect() != direct || buf.isReadOnly()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (size < free.length) {
+                free[size++] = buf;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    @Override
+    public String toString() {
+        int pooled;
+        lock.lock();
+        try {
+            pooled = size;
+        } finally {
+            lock.unlock();
+        }
+        return String.format("%d KB %s buffers, %d allocated, %d reused, %d idle",
+                bufferSize / 1024, direct ? "direct" : "heap", allocated.sum(), reused.sum(), pooled);
+    }
+}
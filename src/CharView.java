@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+// A reusable, mutable line of text: the decoder refills it for every line instead of
+// creating a String. It is only valid until the next line is decoded into it, so
+// anything that keeps the text (a cache key, a queued log event) has to copy it.
+//
+// hashCode() is String's, and equals() accepts a String with the same characters, so a
+// view can look up a HashMap keyed by Strings without being turned into one. The
+// reverse, String.equals(view), is false; only ever pass the view as the lookup key.
+public final class CharView implements CharSequence {
+    private char[] chars;
+    private int start;
+    private int end;
+
+    public CharView(int capacity) {
+        this.chars = new char[Math.max(16, capacity)];
+    }
+
+    // Backing array with room for at least capacity chars, for filling in place
+    char[] buffer(int capacity) {
+        if (chars.length < capacity) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+        return chars;
+    }
+
+    int capacity() {
+        return chars.length;
+    }
+
+    void set(int length) {
+        start = 0;
+        end = length;
+    }
+
+    public CharView clear() {
+        start = 0;
+        end = 0;
+        return this;
+    }
+
+    public CharView append(char c) {
+        buffer(end + 1)[end++] = c;
+        return this;
+    }
+
+    // Drops leading and trailing whitespace without copying
+    public CharView trim() {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return this;
+    }
+
+    public static CharSequence trim(CharSequence text) {
+        if (text instanceof CharView view) {
+            return view.trim();
+        }
+        return text.toString().trim();
+    }
+
+    public static boolean startsWithIgnoreCase(CharSequence text, String prefix) {
+        if (text.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            char a = text.charAt(i);
+            char b = prefix.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean equalsIgnoreCase(CharSequence text, String other) {
+        if (text.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < other.length(); i++) {
+            char a = text.charAt(i);
+            char b = other.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new String(chars, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CharSequence other) || other.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (chars[start + i] != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
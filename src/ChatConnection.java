@@ -0,0 +1,245 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Client end of one chat session, independent of any UI. Connecting, reading and writing run
+// on virtual threads, so no call blocks the caller: send() only queues the message. A
+// connection that drops or cannot be opened is retried with exponential backoff, and the
+// session token is sent again on every reconnect so the conversation carries on. Only the
+// user (disconnect()) or the server (goodbye, kick, shutdown) ends the session for good.
+public class ChatConnection {
+    public enum State { CONNECTING, CONNECTED, RECONNECTING, DISCONNECTED }
+
+    // Called on the connection's own threads
+    public interface Listener {
+        void stateChanged(State state, String detail);
+
+        void received(String line);
+    }
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    // Small on purpose: a runtime hosts thousands of connections, and most writes are one short message
+    private static final int READ_BUFFER_BYTES = 4096;
+    private static final String GOODBYE = "Sampai jumpa!";
+    private static final byte[] CLOSE = new byte[0];
+
+    private final String host;
+    private final int port;
+    private final boolean framed;
+    private volatile String sessionToken;
+    private volatile Listener listener;
+    private volatile boolean running;
+    // Set by disconnect(), as opposed to the server ending the session
+    private volatile boolean stopped;
+    private volatile Link current;
+    private Thread runner;
+
+    // One socket; reconnecting opens a new Link
+    private final class Link {
+        final Socket socket;
+        final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        // Why the server ended the session, or null if the connection was lost
+        volatile String ended;
+        // Whether the server answered the session request. A server that turns the connection
+        // away ("Server full") sends a line and closes, and must not reset the backoff.
+        volatile boolean established;
+
+        Link(Socket socket) {
+            this.socket = socket;
+        }
+
+        void send(byte frameType, String text) {
+            queue.add(framed ? WireFrame.encode(frameType, text) : (text + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Writes what was queued, then the DISCONNECT frame, then closes
+        void finish() {
+            if (framed) {
+                send(WireFrame.DISCONNECT, "");
+            }
+            queue.add(CLOSE);
+        }
+
+        void write() {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream(256);
+            List<byte[]> drained = new ArrayList<>();
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    drained.clear();
+                    drained.add(queue.take());
+                    queue.drainTo(drained);
+                    batch.reset();
+                    for (byte[] frame : drained) {
+                        if (frame == CLOSE) {
+                            batch.writeTo(out);
+                            out.flush();
+                            return;
+                        }
+                        batch.write(frame);
+                    }
+                    batch.writeTo(out);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // The read loop notices the broken connection
+            } finally {
+                close();
+            }
+        }
+
+        void read() throws IOException {
+            // Text lines until the server acknowledges framing, frames after that
+            LineDecoder decoder = new LineDecoder(false);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            InputStream in = socket.getInputStream();
+            int n;
+            while (ended == null && (n = in.read(buffer.array())) >= 0) {
+                buffer.clear().limit(n);
+                decoder.decode(buffer, this::receive);
+            }
+        }
+
+        private void receive(String line) {
+            if (ended != null || line == LineDecoder.NEGOTIATED || line == LineDecoder.PONG) {
+                return;
+            }
+            if (line == LineDecoder.PING) {
+                // Heartbeat from the server; answering keeps an idle session from timing out
+                send(WireFrame.CONTROL, WireFrame.PONG);
+            } else if (line == LineDecoder.PEER_DISCONNECT || line.equals("__DISCONNECTED__")) {
+                ended = "Disconnected!";
+            } else if (line == LineDecoder.INVALID_FRAME) {
+                ended = "Protocol error, disconnecting";
+            } else if (line.startsWith(WireFrame.SESSION)) {
+                sessionToken = line.substring(WireFrame.SESSION.length()).trim();
+                established = true;
+            } else {
+                listener.received(line);
+                if (line.equalsIgnoreCase(GOODBYE)) {
+                    ended = "Disconnected!";
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // sessionToken resumes an earlier session; null starts a new one
+    public ChatConnection(String host, int port, boolean framed, String sessionToken) {
+        this.host = host;
+        this.port = port;
+        this.framed = framed;
+        this.sessionToken = sessionToken;
+    }
+
+    public void connect(Listener listener) {
+        this.listener = listener;
+        running = true;
+        runner = Thread.ofVirtual().name("ChatConnection-" + host + ":" + port).start(this::run);
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        String detail = null;
+        listener.stateChanged(State.CONNECTING, host + ":" + port);
+        while (running) {
+            Socket socket = new Socket();
+            Link link = new Link(socket);
+            try {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                if (framed) {
+                    // Asked for before the first message; the server switches once it has sent the welcome
+                    link.queue.add((WireFrame.MARKER + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                String token = sessionToken;
+                link.send(WireFrame.MESSAGE, token == null ? WireFrame.SESSION : WireFrame.SESSION + " " + token);
+                Thread.ofVirtual().name("ChatConnection-writer").start(link::write);
+                current = link;
+                if (!running) {
+                    // disconnect() came while connecting
+                    link.finish();
+                }
+                listener.stateChanged(State.CONNECTED, host + ":" + port);
+                link.read();
+                if (link.established) {
+                    backoff = MIN_BACKOFF_MILLIS;
+                }
+                detail = link.ended != null ? link.ended : "Connection lost";
+                if (link.ended != null) {
+                    running = false;
+                }
+            } catch (IOException e) {
+                detail = e.getMessage();
+            } finally {
+                current = null;
+                link.close();
+            }
+            if (!running) {
+                break;
+            }
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            listener.stateChanged(State.RECONNECTING, "retry in " + delay + " ms (" + detail + ")");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+        running = false;
+        listener.stateChanged(State.DISCONNECTED, stopped ? "Disconnected from server." : detail);
+    }
+
+    // False when there is no connection to queue it on
+    public boolean send(String message) {
+        Link link = current;
+        if (link == null || link.ended != null) {
+            return false;
+        }
+        link.send(WireFrame.MESSAGE, message);
+        return true;
+    }
+
+    // Ends the session for good: queued messages are still written before the socket closes
+    public void disconnect() {
+        if (!running) {
+            return;
+        }
+        stopped = true;
+        running = false;
+        Link link = current;
+        if (link != null) {
+            link.finish();
+        } else if (runner != null) {
+            // Connecting or waiting to retry
+            runner.interrupt();
+        }
+    }
+
+    public boolean isConnected() {
+        return current != null;
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+}
@@ -0,0 +1,1040 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import jdk.net.ExtendedSocketOptions;
+
+// The chat server without any UI: engine, client registry, logging, transcript and the
+// @-commands. ServerGUI and the headless console are both views on top of it.
+public class ChatServer {
+    // What a view is told about; called from server threads, never the EDT
+    public interface Listener {
+        // One batch of formatted log lines
+        default void logAppended(String batch) {
+        }
+
+        // Something about the clients changed in bulk (periodic refresh, @list, stop)
+        default void clientsChanged() {
+        }
+
+        default void clientAdded(ClientHandler handler) {
+            clientsChanged();
+        }
+
+        default void clientRemoved(ClientHandler handler) {
+            clientsChanged();
+        }
+
+        default void statusChanged(boolean running) {
+        }
+
+        // @clear; false when there is no log view, as in headless and admin consoles
+        default boolean clearLog() {
+            return false;
+        }
+    }
+
+    // Where a command's replies go. Log lines written while the command runs are copied to
+    // it as well when echoLog() is true, for consoles that do not see the server log.
+    public interface CommandOutput {
+        void reply(String text);
+
+        default boolean echoLog() {
+            return false;
+        }
+    }
+
+    private final int port;
+    private final ServerConfig config;
+    private final Listener listener;
+    private volatile ConnectionEngine engine;
+    private volatile ResponsePacer pacer;
+    private volatile IntentRules intents;
+    private volatile ResponseCache responseCache;
+    private ScheduledExecutorService maintenance;
+    private volatile ExecutorService writerPool;
+    private volatile BroadcastFanout fanout;
+    private volatile OutboundLimits outboundLimits;
+    private volatile IdleTracker idleTracker;
+    private volatile RateLimiter connectionLimiter;
+    private volatile RateLimiter messageLimiter;
+    private volatile Responders responders;
+    private final LogPipeline logPipeline;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private MetricsEndpoint metricsEndpoint;
+    private final TranscriptJournal journal;
+    private final TranscriptIndex transcriptIndex;
+    private final SessionStore sessions;
+    private final AtomicInteger clientSeq = new AtomicInteger();
+    private final int nodeId;
+    private volatile ClusterNode cluster;
+    private final ExecutorService commandWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CommandWorker");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ThreadLocal<CommandOutput> echo = new ThreadLocal<>();
+    private TranscriptIndex.Cursor searchCursor;
+    private CommandOutput searchOutput;
+    private final ClientRegistry clients = new ClientRegistry();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final AtomicBoolean stopping = new AtomicBoolean(false);
+    private volatile boolean draining;
+    private volatile long startedMillis;
+
+    static final EncodedLine SERVER_FULL_MESSAGE = EncodedLine.of("Server full. Please try again later.");
+    static final EncodedLine RATE_LIMITED_MESSAGE =
+            EncodedLine.of("Too many connections from your address. Please try again later.");
+    private static final Pattern VALID_FILENAME = Pattern.compile("[a-zA-Z0-9_.-]*");
+    private static final int SEARCH_PAGE_SIZE = 20;
+    // Keeps outbound queue depths in the client list current
+    private static final int CLIENT_LIST_REFRESH_SECONDS = 2;
+    private static final int METRICS_TICK_SECONDS = 1;
+    private static final int RATE_LIMIT_SWEEP_SECONDS = 10;
+    private static final int SESSION_SWEEP_SECONDS = 60;
+    private static final int DRAIN_POLL_MILLIS = 20;
+
+    public ChatServer(int port, ServerConfig config, Listener listener) {
+        this.port = port;
+        this.config = config;
+        this.listener = listener;
+        this.logPipeline = new LogPipeline(config.getLogCapacity(), config.getLogFlushMillis(), listener::logAppended);
+        this.journal = openJournal(config);
+        this.transcriptIndex = openIndex(journal);
+        this.sessions = openSessions(config);
+        this.nodeId = Math.max(0, config.getClusterNodeId());
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+
+    // Blocks until the server is stopped
+    public void start() {
+        if (!isValid(port)) {
+            log("Server Error : Port tidak valid (" + port + "), use 1024 - 65535");
+            return;
+        }
+        try {
+            initialize();
+            engine = ConnectionEngine.create(config.getEngine(), this);
+            engine.bind(port);
+            startedMillis = System.currentTimeMillis();
+            log("Server Started on port : " + port + " (engine: " + engine.getName() + ")");
+            record(TranscriptJournal.Kind.SERVER, 0, TranscriptJournal.SERVER_STARTED + " on port : " + port);
+            startMetricsEndpoint();
+            startCluster();
+            isRunning.set(true);
+            listener.statusChanged(true);
+            engine.serve();
+        } catch (IOException | IllegalArgumentException e) {
+            log("Server Error : " + e.getMessage());
+        } finally {
+            isRunning.set(false);
+            listener.statusChanged(false);
+        }
+    }
+
+    // Everything a ClientHandler relies on, short of a bound socket; Benchmarks drives
+    // handlers against an initialized server that never listens
+    void initialize() throws IOException {
+        intents = IntentRules.fromConfig(config);
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ServerMaintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        if (intents.isReloadable()) {
+            int every = config.getIntentsReloadSeconds();
+            maintenance.scheduleWithFixedDelay(this::reloadIntents, every, every, TimeUnit.SECONDS);
+        }
+        maintenance.scheduleWithFixedDelay(listener::clientsChanged,
+                CLIENT_LIST_REFRESH_SECONDS, CLIENT_LIST_REFRESH_SECONDS, TimeUnit.SECONDS);
+        maintenance.scheduleAtFixedRate(metrics::tick, METRICS_TICK_SECONDS, METRICS_TICK_SECONDS, TimeUnit.SECONDS);
+        outboundLimits = OutboundLimits.fromConfig(config);
+        writerPool = Executors.newVirtualThreadPerTaskExecutor();
+        fanout = new BroadcastFanout(this, maintenance);
+        responseCache = ResponseCache.fromConfig(config);
+        pacer = ResponsePacer.fromConfig(config);
+        connectionLimiter = RateLimiter.connectionsFromConfig(config);
+        messageLimiter = RateLimiter.messagesFromConfig(config);
+        maintenance.scheduleWithFixedDelay(() -> {
+            connectionLimiter.sweep();
+            messageLimiter.sweep();
+        }, RATE_LIMIT_SWEEP_SECONDS, RATE_LIMIT_SWEEP_SECONDS, TimeUnit.SECONDS);
+        idleTracker = IdleTracker.fromConfig(config);
+        if (idleTracker != null) {
+            long every = idleTracker.getTickMillis();
+            maintenance.scheduleAtFixedRate(idleTracker::tick, every, every, TimeUnit.MILLISECONDS);
+        }
+        responders = Responders.fromConfig(config, this::log);
+        maintenance.scheduleWithFixedDelay(sessions::sweep, SESSION_SWEEP_SECONDS, SESSION_SWEEP_SECONDS,
+                TimeUnit.SECONDS);
+        if (config.getSessionSnapshot() != null && config.getSessionSnapshotSeconds() > 0) {
+            int every = config.getSessionSnapshotSeconds();
+            maintenance.scheduleWithFixedDelay(this::saveSessions, every, every, TimeUnit.SECONDS);
+        }
+    }
+
+    // Blocks for up to chat.shutdown.drainSeconds while clients are drained; call it off the EDT
+    public void stop() {
+        if (!stopping.compareAndSet(false, true)) {
+            log("Server is already stopping");
+            return;
+        }
+        isRunning.set(false);
+        try {
+            if (cluster != null) {
+                cluster.stop();
+                cluster = null;
+            }
+            drain();
+
+            if (engine != null) {
+                engine.stop();
+            }
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
+                metricsEndpoint = null;
+            }
+            if (pacer != null) {
+                pacer.shutdown();
+            }
+            if (responders != null) {
+                responders.shutdown();
+            }
+            if (maintenance != null) {
+                maintenance.shutdownNow();
+            }
+            if (writerPool != null) {
+                // Let queued disconnect signals go out
+                writerPool.shutdown();
+            }
+            saveSessions();
+
+            clients.clear();
+            listener.clientsChanged();
+            log("Server Stopped");
+            record(TranscriptJournal.Kind.SERVER, 0, "Server Stopped");
+
+        } catch (IOException e) {
+            log("Error stopping server: " + e.getMessage());
+        } finally {
+            draining = false;
+            stopping.set(false);
+            listener.statusChanged(false);
+        }
+    }
+
+    // Stops accepting, lets replies already under way go out, then signals every client at once
+    // and waits for the sockets to close. Connections still open at the deadline are closed by
+    // force. The client list is updated once, by stop(), instead of once per client.
+    private void drain() throws IOException {
+        draining = true;
+        if (engine != null) {
+            engine.stopAccepting();
+        }
+        List<ClientHandler> all = clients.snapshot();
+        if (all.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(config.getShutdownDrainSeconds());
+        // The last quarter is kept for the disconnect signal to go out
+        long repliesDeadline = deadline - (deadline - start) / 4;
+        log("Draining " + all.size() + " clients, deadline " + config.getShutdownDrainSeconds() + " s");
+
+        int waiting = awaitClients(all, ClientHandler::hasPendingReplies, repliesDeadline, "waiting for replies");
+        int signalled = 0;
+        for (ClientHandler ch : all) {
+            if (ch.signalDisconnect()) {
+                signalled++;
+            }
+        }
+        int open = awaitClients(all, ch -> !ch.isClosed(), deadline, "still connected");
+        if (open > 0) {
+            for (ClientHandler ch : all) {
+                if (!ch.isClosed()) {
+                    ch.forceClose();
+                }
+            }
+        }
+        log("Drain finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " +
+                signalled + " clients disconnected, " + waiting + " with replies undelivered, " +
+                open + " closed by force");
+    }
+
+    // Polls until no client matches or the deadline passes, logging progress once a second;
+    // returns how many still match
+    private int awaitClients(List<ClientHandler> all, Predicate<ClientHandler> pending, long deadline,
+                             String what) {
+        long nextReport = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (true) {
+            int count = 0;
+            for (ClientHandler ch : all) {
+                if (pending.test(ch)) {
+                    count++;
+                }
+            }
+            long now = System.nanoTime();
+            if (count == 0 || now - deadline >= 0) {
+                return count;
+            }
+            if (now - nextReport >= 0) {
+                log("Drain: " + count + " of " + all.size() + " clients " + what);
+                nextReport = now + TimeUnit.SECONDS.toNanos(1);
+            }
+            try {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return count;
+            }
+        }
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    // Flushes the log; for processes that exit once the server has stopped
+    public void close() {
+        commandWorker.shutdown();
+        logPipeline.shutdown();
+    }
+
+    private void startMetricsEndpoint() {
+        int metricsPort = config.getMetricsPort();
+        if (metricsPort <= 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(this, metricsPort);
+            metricsEndpoint.start();
+            log("Metrics endpoint listening on http://localhost:" + metricsEndpoint.getPort() + "/metrics");
+        } catch (IOException e) {
+            log("Metrics endpoint disabled: " + e.getMessage());
+        }
+    }
+
+    private void startCluster() {
+        if (nodeId == 0) {
+            return;
+        }
+        try {
+            ClusterNode node = ClusterNode.fromConfig(this, config);
+            node.start();
+            cluster = node;
+        } catch (IOException | IllegalArgumentException e) {
+            log("Cluster disabled: " + e.getMessage());
+        }
+    }
+
+    // Standalone servers number clients 1, 2, 3...; in a cluster the last two digits are the
+    // node (client 301 is the third client of node 1), so IDs are unique across the cluster
+    int nextClientId() {
+        int seq = clientSeq.incrementAndGet();
+        return nodeId == 0 ? seq : seq * ClusterNode.ID_STRIDE + nodeId;
+    }
+
+    // Null when running standalone
+    ClusterNode getCluster() {
+        return cluster;
+    }
+
+    private TranscriptJournal openJournal(ServerConfig config) {
+        if (!config.isJournalEnabled()) {
+            return null;
+        }
+        try {
+            TranscriptJournal opened = TranscriptJournal.fromConfig(config);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException ignored) {
+                }
+            }, "TranscriptClose"));
+            return opened;
+        } catch (IOException e) {
+            log("Transcript journal disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Sessions outlive a stop/start of the server; the snapshot carries them across processes
+    private SessionStore openSessions(ServerConfig config) {
+        SessionStore store = SessionStore.fromConfig(config);
+        String snapshot = config.getSessionSnapshot();
+        if (snapshot != null && Files.exists(Path.of(snapshot))) {
+            try {
+                long started = System.nanoTime();
+                int loaded = store.load(Path.of(snapshot));
+                log("Sessions restored: " + loaded + " in " +
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+            } catch (IOException e) {
+                log("Session snapshot not restored: " + e.getMessage());
+            }
+        }
+        return store;
+    }
+
+    private void saveSessions() {
+        String snapshot = config.getSessionSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            sessions.snapshot(Path.of(snapshot));
+        } catch (IOException e) {
+            log("Session snapshot failed: " + e.getMessage());
+        }
+    }
+
+    // Built from the journal's history in the background; searches meanwhile see what is indexed so far
+    private TranscriptIndex openIndex(TranscriptJournal journal) {
+        if (journal == null) {
+            return null;
+        }
+        return new TranscriptIndex(journal);
+    }
+
+    public void log(String msg) {
+        logPipeline.publish(msg);
+        CommandOutput out = echo.get();
+        if (out != null) {
+            out.reply(msg);
+        }
+    }
+
+    // For per-message lines: the parts are copied into the log ring, never joined into a String
+    // unless a command is echoing the log
+    public void log(String prefix, int number, String infix, CharSequence text) {
+        logPipeline.publish(prefix, number, infix, text);
+        CommandOutput out = echo.get();
+        if (out != null) {
+            out.reply(prefix + number + infix + text);
+        }
+    }
+
+    void record(TranscriptJournal.Kind kind, int clientId, CharSequence text) {
+        if (journal != null) {
+            journal.append(kind, clientId, text);
+        }
+    }
+
+    public boolean hasJournal() {
+        return journal != null;
+    }
+
+    // Writes the transcript to file in the background; onError gets the message if it fails
+    public void exportLog(File file, Consumer<String> onError) {
+        if (journal == null) {
+            log("Save Error: transcript journal is disabled");
+            onError.accept("transcript journal is disabled");
+            return;
+        }
+        journal.exportAsync(file.toPath(), error -> {
+            if (error == null) {
+                log("Log saved to: " + file.getAbsolutePath());
+                return;
+            }
+            log("Save Error: " + error);
+            onError.accept(error);
+        });
+    }
+
+    private void reloadIntents() {
+        try {
+            if (intents.reloadIfChanged()) {
+                log("Intent rules reloaded (" + intents.current().size() + " patterns)");
+            }
+        } catch (IOException e) {
+            log("Intent reload failed, keeping previous rules: " + e.getMessage());
+        }
+    }
+
+    IntentRules getIntents() {
+        return intents;
+    }
+
+    ExecutorService getWriterPool() {
+        return writerPool;
+    }
+
+    OutboundLimits getOutboundLimits() {
+        return outboundLimits;
+    }
+
+    ScheduledExecutorService getMaintenance() {
+        return maintenance;
+    }
+
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    ResponsePacer getPacer() {
+        return pacer;
+    }
+
+    // Null when idle connections are neither pinged nor timed out
+    IdleTracker getIdleTracker() {
+        return idleTracker;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Connection rate limit, checked before anything is allocated for the connection
+    boolean admitConnection(InetAddress address) {
+        return connectionLimiter.tryAcquire(address, System.nanoTime());
+    }
+
+    RateLimiter getMessageLimiter() {
+        return messageLimiter;
+    }
+
+    Responders getResponders() {
+        return responders;
+    }
+
+    SessionStore getSessions() {
+        return sessions;
+    }
+
+    // Text clients are not timed out by default, so the OS has to notice the ones that vanished
+    void enableKeepAlive(Socket client) {
+        try {
+            client.setKeepAlive(true);
+            int idle = config.getKeepAliveSeconds();
+            if (idle > 0 && client.supportedOptions().contains(ExtendedSocketOptions.TCP_KEEPIDLE)) {
+                client.setOption(ExtendedSocketOptions.TCP_KEEPIDLE, idle);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Keepalive is a backstop; the connection works without it
+        }
+    }
+
+    // Writes the refusal and closes on a writer thread, so a peer that does not read
+    // cannot hold up the accept loop
+    void reject(Socket client, EncodedLine message) {
+        try {
+            writerPool.execute(() -> {
+                try (client) {
+                    message.writeTo(client.getOutputStream());
+                } catch (IOException ignored) {
+                    // Nothing more to tell a client that is already gone
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    boolean hasCapacity() {
+        return clients.size() < config.getMaxClients();
+    }
+
+    void addClient(ClientHandler handler) {
+        clients.add(handler);
+        listener.clientAdded(handler);
+    }
+
+    public void removeClient(ClientHandler handler) {
+        if (clients.remove(handler)) {
+            listener.clientRemoved(handler);
+        }
+    }
+
+    public ClientRegistry getClients() {
+        return clients;
+    }
+
+    // "Jumlah Client: 2" followed by one numbered line per connected client
+    public String describeClients() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Jumlah Client: ").append(clients.size()).append("\n\n");
+
+        List<ClientHandler> sorted = clients.snapshot();
+        sorted.sort(Comparator.comparingInt(ClientHandler::getClientID));
+        int index = 1;
+        for (ClientHandler ch : sorted) {
+            if (ch.isConnected()) {
+                sb.append(index).append(". ").append(ch.getClientInfo())
+                        .append(" [").append(ch.getQueueInfo()).append("]\n");
+                index++;
+            }
+        }
+        return sb.toString();
+    }
+
+    // Kicks the matching clients of this node and returns their descriptions
+    List<String> kickLocal(String target) {
+        // Copied first: each close unindexes the client from the set being walked
+        List<String> kicked = new ArrayList<>();
+        for (ClientHandler ch : new ArrayList<>(clients.find(target))) {
+            String clientInfo = ch.getClientInfo();
+            ch.sendMessage("[SERVER] You have been disconnected by administrator");
+            ch.closeConnection();
+            log("Kicked client: " + clientInfo);
+            record(TranscriptJournal.Kind.KICK, ch.getClientID(), clientInfo);
+            kicked.add(clientInfo);
+        }
+        return kicked;
+    }
+
+    private void logRemoteKicks(int node, String target, ClusterNode.Reply reply) {
+        if (reply.isFailed()) {
+            log("Kick failed on node " + node + ": " + reply.error());
+            return;
+        }
+        if (reply.lines().isEmpty()) {
+            log("Client not found on node " + node + ": " + target);
+        }
+        for (String clientInfo : reply.lines()) {
+            log("Kicked client on node " + node + ": " + clientInfo);
+        }
+    }
+
+    // A broadcast sent from another node's console, delivered to this node's clients
+    void receiveClusterBroadcast(int fromNode, String msg) {
+        BroadcastFanout current = fanout;
+        if (current == null) {
+            return;
+        }
+        List<ClientHandler> targets = clients.snapshot();
+        BroadcastFanout.Broadcast broadcast = current.send(targets, msg);
+        log("Broadcast #" + broadcast.getId() + " from node " + fromNode + " queued to " + targets.size() +
+                " clients: " + msg);
+        record(TranscriptJournal.Kind.BROADCAST, 0, msg);
+    }
+
+    public void command(String command, CommandOutput out) {
+        if (command == null || command.trim().isEmpty()) {
+            return;
+        }
+        if (out.echoLog()) {
+            echo.set(out);
+        }
+        try {
+            dispatch(command.trim(), out);
+        } finally {
+            echo.remove();
+        }
+    }
+
+    private void dispatch(String command, CommandOutput out) {
+        String[] parts = command.split("\\s+", 2);
+        String cmd = parts[0].toLowerCase();
+
+        switch (cmd) {
+            case "@list" -> {
+                out.reply(describeClients().stripTrailing());
+                listener.clientsChanged();
+                log("Client list updated");
+                ClusterNode node = cluster;
+                if (node != null) {
+                    node.askAll(ClusterNode.LIST).thenAccept(replies -> replies.forEach((id, reply) -> {
+                        if (reply.isFailed()) {
+                            log("List failed on node " + id + ": " + reply.error());
+                        } else {
+                            out.reply("Node " + id + " - " + String.join("\n", reply.lines()).stripTrailing());
+                        }
+                    }));
+                }
+            }
+            case "@broadcast" -> {
+                if (parts.length < 2) {
+                    log("Usage: @broadcast <message>");
+                    return;
+                }
+                String msg = parts[1].trim();
+                if (msg.isEmpty()) {
+                    log("Broadcast message cannot be empty");
+                    return;
+                }
+                if (fanout == null) {
+                    log("Server is not running");
+                    return;
+                }
+                List<ClientHandler> targets = clients.snapshot();
+                BroadcastFanout.Broadcast broadcast = fanout.send(targets, msg);
+                ClusterNode node = cluster;
+                int nodes = node == null ? 0 : node.broadcast(msg);
+                log("Broadcast #" + broadcast.getId() + " queued to " + targets.size() + " clients" +
+                        (nodes > 0 ? " and forwarded to " + nodes + " nodes" : "") + ": " + msg);
+                record(TranscriptJournal.Kind.BROADCAST, 0, msg);
+            }
+            case "@kick" -> {
+                if (parts.length < 2) {
+                    log("Usage: @kick <client_id|ip|subnet/24>");
+                    return;
+                }
+                String target = parts[1].trim();
+                ClusterNode node = cluster;
+                // A client ID names its node; an address can match clients on any node
+                int owner = -1;
+                if (node != null) {
+                    try {
+                        owner = ClusterNode.nodeOf(Integer.parseInt(target));
+                    } catch (NumberFormatException e) {
+                        owner = 0;
+                    }
+                }
+                if (owner > 0 && owner != nodeId) {
+                    int from = owner;
+                    node.ask(owner, ClusterNode.KICK, target).thenAccept(reply -> logRemoteKicks(from, target, reply));
+                    return;
+                }
+                List<String> kicked;
+                try {
+                    kicked = kickLocal(target);
+                } catch (IllegalArgumentException e) {
+                    log(e.getMessage());
+                    return;
+                }
+                if (owner == 0) {
+                    node.askAll(ClusterNode.KICK, target).thenAccept(replies -> replies.forEach((id, reply) -> {
+                        if (reply.isFailed() || !reply.lines().isEmpty()) {
+                            logRemoteKicks(id, target, reply);
+                        }
+                    }));
+                } else if (kicked.isEmpty()) {
+                    log("Client not found: " + target);
+                }
+            }
+            case "@cluster" -> {
+                ClusterNode current = cluster;
+                out.reply(current == null ? "Cluster mode is off (set chat.cluster.nodeId)" :
+                        String.join("\n", current.describe()));
+            }
+            case "@session" -> {
+                if (parts.length < 2) {
+                    log("Usage: @session <client_id>");
+                    return;
+                }
+                ClientHandler ch;
+                try {
+                    ch = clients.get(Integer.parseInt(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    log("Usage: @session <client_id>");
+                    return;
+                }
+                SessionStore.Info info = ch == null ? null : sessions.info(ch.getSessionToken());
+                if (info == null) {
+                    log("No session for client: " + parts[1].trim());
+                    return;
+                }
+                out.reply(String.format("Client %d: session of client %d, name %s, %d messages, recent intents %s, " +
+                                "started %s", ch.getClientID(), info.number(), info.name() == null ? "-" : info.name(),
+                        info.messages(), info.recentIntents(), Instant.ofEpochMilli(info.createdMillis())));
+            }
+            case "@shutdown" -> {
+                log("Shutdown command received");
+                // Draining blocks; commands may come from the EDT or an admin connection
+                new Thread(this::stop, "ServerStop").start();
+            }
+            case "@save" -> {
+                if (parts.length < 2) {
+                    log("Usage: @save <filename>");
+                    return;
+                }
+                String filename = parts[1].trim();
+                if (!VALID_FILENAME.matcher(filename).matches()) {
+                    log("Invalid filename. Use only letters, numbers, dots, hyphens and underscores.");
+                    return;
+                }
+                exportLog(new File(filename), error -> {});
+            }
+            case "@search" -> {
+                if (parts.length < 2) {
+                    log("Usage: @search <client_id[@run]|ip|keyword> [from] [to]");
+                    return;
+                }
+                if (transcriptIndex == null) {
+                    log("Transcript search is not available");
+                    return;
+                }
+                List<String> args = new ArrayList<>(Arrays.asList(parts[1].trim().split("\\s+")));
+                String target = args.remove(0);
+                long[] range;
+                try {
+                    range = TranscriptIndex.parseRange(args);
+                } catch (IllegalArgumentException e) {
+                    log(e.getMessage() + " (use 30m, 2h, 7d, HH:mm, yyyy-MM-dd or yyyy-MM-ddTHH:mm)");
+                    return;
+                }
+                if (!transcriptIndex.isCaughtUp()) {
+                    out.reply("Transcript history is still being indexed (" + transcriptIndex.size() +
+                            " records so far); results may be incomplete");
+                }
+                synchronized (this) {
+                    searchCursor = transcriptIndex.search(target, range[0], range[1]);
+                    searchOutput = out;
+                }
+                commandWorker.execute(this::showSearchPage);
+            }
+            case "@more" -> {
+                synchronized (this) {
+                    if (searchCursor == null) {
+                        log("No search in progress");
+                        return;
+                    }
+                    searchOutput = out;
+                }
+                commandWorker.execute(this::showSearchPage);
+            }
+            case "@reload" -> {
+                if (intents == null) {
+                    log("Server is not running");
+                    return;
+                }
+                try {
+                    intents.reload();
+                    log("Intent rules reloaded (" + intents.current().size() + " patterns)");
+                } catch (IOException e) {
+                    log("Intent reload failed, keeping previous rules: " + e.getMessage());
+                }
+            }
+            case "@clear" -> {
+                if (listener.clearLog()) {
+                    log("Log cleared");
+                } else {
+                    out.reply("No log view to clear in this console");
+                }
+            }
+            case "@status" -> status();
+            case "@metrics" -> metrics();
+            case "@help" -> {
+                String help = """
+                    Available commands:
+                    @list - Show connected clients
+                    @broadcast <msg> - Send message to all clients
+                    @kick <client_id|ip|subnet/24> - Disconnect a client, or all clients from an address
+                    @session <client_id> - Show a client's conversation session
+                    @cluster - Show cluster members
+                    @shutdown - Stop the server
+                    @save <filename> - Save log to file
+                    @search <client_id[@run]|ip|keyword> [from] [to] - Search transcripts
+                    @more - Next page of search results
+                    @reload - Reload intent rules
+                    @clear - Clear the log view of the server window
+                    @status - Show server status
+                    @metrics - Show traffic and latency metrics
+                    @help - Show this help""";
+                out.reply(help);
+            }
+            default -> {
+                log("Unknown command: " + command + " (type @help for available commands)");
+            }
+        }
+    }
+
+    private void status() {
+        log("Server Status: " + (isRunning.get() ? "Running" : "Stopped"));
+        log("Port: " + port);
+        log("Connected clients: " + clients.size() + " from " + clients.addressCount() + " addresses");
+        log("Max clients: " + config.getMaxClients());
+        ConnectionEngine current = engine;
+        if (current != null) {
+            log("Engine: " + current.getName() + " (~" +
+                    current.estimateBytesPerConnection() / 1024 + " KB per connection)");
+        }
+        log("Response pacing: " + (pacer != null ? pacer : config.getPacing()));
+        if (outboundLimits != null) {
+            long lines = 0;
+            long bytes = 0;
+            long dropped = 0;
+            for (ClientHandler ch : clients.all()) {
+                lines += ch.getQueuedLines();
+                bytes += ch.getQueuedBytes();
+                dropped += ch.getDroppedLines();
+            }
+            log("Outbound queues: " + lines + " lines / " + bytes / 1024 + " KB pending, " + dropped +
+                    " dropped (limit " + outboundLimits.maxLines() + " lines / " +
+                    outboundLimits.maxBytes() / 1024 + " KB per client, on overflow: " +
+                    outboundLimits.overflow().name().toLowerCase().replace('_', '-') + ")");
+        }
+        if (responseCache != null) {
+            log("Response cache: " + responseCache);
+        }
+        if (idleTracker != null) {
+            log("Idle tracking: " + idleTracker);
+        }
+        if (connectionLimiter != null) {
+            log("Rate limits per address: connections " + connectionLimiter + ", messages " + messageLimiter +
+                    ", " + (connectionLimiter.getTrackedAddresses() + messageLimiter.getTrackedAddresses()) +
+                    " buckets");
+        }
+        log("Sessions: " + sessions);
+        ClusterNode node = cluster;
+        if (node != null) {
+            log("Cluster: " + node);
+        }
+        if (responders != null && responders.isEnabled()) {
+            log("Responders: " + responders);
+        }
+        BufferPool buffers = current == null ? null : current.getBufferPool();
+        if (buffers != null) {
+            log("Socket buffers: " + buffers);
+        }
+        log("Log queue: " + logPipeline.getQueueDepth() + "/" + logPipeline.getCapacity() +
+                ", dropped " + logPipeline.getDropped());
+        if (journal != null) {
+            log("Transcript: segment " + journal.getSegment() + ", " +
+                    journal.getUnsyncedBytes() + " bytes awaiting sync, " +
+                    journal.getDroppedRecords() + " records too large for a segment dropped");
+        }
+        if (transcriptIndex != null) {
+            log("Transcript index: " + transcriptIndex.size() + " records, " +
+                    transcriptIndex.termCount() + " terms, " + transcriptIndex.runCount() + " runs" +
+                    (transcriptIndex.isCaughtUp() ? "" : " (still indexing history)"));
+        }
+        Runtime rt = Runtime.getRuntime();
+        log("Memory: " + (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024) + " MB heap used of " +
+                rt.totalMemory() / (1024 * 1024) + " MB, " + ManagementFactory.getThreadMXBean().getThreadCount() + " platform threads" +
+                (startedMillis > 0 ? ", up " + (System.currentTimeMillis() - startedMillis) / 1000 + " s" : ""));
+    }
+
+    private void metrics() {
+        for (String line : metrics.describe()) {
+            log(line);
+        }
+        ConnectionEngine current = engine;
+        ConnectionEngine.PoolStats pool = current == null ? null : current.getPoolStats();
+        if (pool != null) {
+            log("Client pool (" + current.getName() + "): " + pool.threads() + " threads, " + pool.active() +
+                    " active, " + pool.queued() + " queued");
+        }
+        if (responders != null) {
+            for (String line : responders.describe()) {
+                log(line);
+            }
+        }
+    }
+
+    // Counters from ServerMetrics plus gauges read at scrape time
+    public String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        metrics.writePrometheus(sb);
+        long lines = 0;
+        long bytes = 0;
+        long dropped = 0;
+        for (ClientHandler ch : clients.all()) {
+            lines += ch.getQueuedLines();
+            bytes += ch.getQueuedBytes();
+            dropped += ch.getDroppedLines();
+        }
+        ServerMetrics.gauge(sb, "chat_clients_connected", "Connected clients", clients.size());
+        ServerMetrics.gauge(sb, "chat_outbound_queued_lines", "Lines waiting in client outbound queues", lines);
+        ServerMetrics.gauge(sb, "chat_outbound_queued_bytes", "Bytes waiting in client outbound queues", bytes);
+        ServerMetrics.gauge(sb, "chat_outbound_dropped_lines", "Lines dropped by connected clients' overflow policy", dropped);
+        ConnectionEngine current = engine;
+        ConnectionEngine.PoolStats pool = current == null ? null : current.getPoolStats();
+        if (pool != null) {
+            ServerMetrics.gauge(sb, "chat_client_pool_threads", "Threads in the client pool", pool.threads());
+            ServerMetrics.gauge(sb, "chat_client_pool_active", "Busy threads in the client pool", pool.active());
+            ServerMetrics.gauge(sb, "chat_client_pool_queued", "Tasks waiting for the client pool", pool.queued());
+        }
+        RateLimiter connections = connectionLimiter;
+        if (connections != null) {
+            ServerMetrics.counter(sb, "chat_rate_limited_connections_total",
+                    "Connections refused by the per-address rate limit", connections.getLimited());
+            ServerMetrics.counter(sb, "chat_rate_limited_messages_total",
+                    "Messages dropped by the per-address rate limit", messageLimiter.getLimited());
+        }
+        IdleTracker idle = idleTracker;
+        if (idle != null) {
+            ServerMetrics.counter(sb, "chat_idle_pings_total", "Heartbeat pings sent to idle clients", idle.getPings());
+        }
+        ClusterNode node = cluster;
+        if (node != null) {
+            ServerMetrics.gauge(sb, "chat_cluster_members_up", "Other cluster nodes currently reachable", node.liveMembers().size());
+            ServerMetrics.gauge(sb, "chat_cluster_remote_clients", "Clients connected to other cluster nodes", node.getRemoteClients());
+        }
+        ServerMetrics.gauge(sb, "chat_sessions_stored", "Conversation sessions held, connected or resumable", sessions.size());
+        ServerMetrics.counter(sb, "chat_sessions_resumed_total", "Sessions resumed by a reconnecting client", sessions.getResumed());
+        Responders backends = responders;
+        if (backends != null) {
+            backends.writePrometheus(sb);
+        }
+        ServerMetrics.gauge(sb, "chat_log_queue_depth", "Log lines waiting to be flushed", logPipeline.getQueueDepth());
+        Runtime rt = Runtime.getRuntime();
+        ServerMetrics.gauge(sb, "chat_heap_used_bytes", "JVM heap in use", rt.totalMemory() - rt.freeMemory());
+        ServerMetrics.gauge(sb, "chat_up", "1 while the server accepts connections", isRunning.get() ? 1 : 0);
+        return sb.toString();
+    }
+
+    // Time from JVM launch until the server accepted connections, for the startup report
+    public long getStartupMillis() {
+        return startedMillis == 0 ? -1 : startedMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    // Runs on the command worker; results go to the console that asked, one page at a time
+    private void showSearchPage() {
+        TranscriptIndex.Cursor cursor;
+        CommandOutput out;
+        synchronized (this) {
+            cursor = searchCursor;
+            out = searchOutput;
+        }
+        if (cursor == null) {
+            return;
+        }
+        try {
+            List<TranscriptIndex.Hit> page = cursor.nextPage(SEARCH_PAGE_SIZE);
+            StringBuilder sb = new StringBuilder();
+            for (TranscriptIndex.Hit hit : page) {
+                sb.append("run ").append(hit.run()).append(' ')
+                        .append(TranscriptJournal.format(hit.entry())).append('\n');
+            }
+            if (page.isEmpty()) {
+                sb.append("No matches\n");
+            }
+            sb.append(cursor.hasMore() ? "-- type @more for the next page --" : "-- end of results --");
+            out.reply(sb.toString());
+            if (!cursor.hasMore()) {
+                synchronized (this) {
+                    if (searchCursor == cursor) {
+                        searchCursor = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log("Search Error: " + e.getMessage());
+            synchronized (this) {
+                searchCursor = null;
+            }
+        }
+    }
+
+    static boolean isValid(int port){
+        return port >= 1024 && port <= 65535;
+    }
+}
@@ -1,7 +1,5 @@
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
 
 public class ClientGUI extends JFrame {
     private JPanel panel1;
@@ -14,12 +12,15 @@ public class ClientGUI extends JFrame {
     private JTextField portInput;
     private JLabel statusLabel;
 
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
-    private String host;
-    private int port;
-    private boolean connected = false;
+    private final String host;
+    // Binary frames unless started with -Dchat.client.protocol=text
+    private final boolean framed = !"text".equalsIgnoreCase(System.getProperty("chat.client.protocol", "framed"));
+    private final LineRenderer output;
+    // Replaced on connect and restart; the old one's late events are ignored
+    private volatile ChatConnection connection;
+
+    // Lines kept in the chat view
+    private static final int SCROLLBACK_LINES = Integer.getInteger("chat.client.scrollback", 5000);
 
     public ClientGUI(String host) {
         this.host = host;
@@ -31,18 +32,21 @@ public class ClientGUI extends JFrame {
         setVisible(true);
 
         textArea1.setEditable(false);
-        setStatus(false);
+        output = new LineRenderer(textArea1, SCROLLBACK_LINES);
+        setStatus(ChatConnection.State.DISCONNECTED);
 
         connectButton.addActionListener(e -> connectToServer());
         sendButton.addActionListener(e -> sendMessage());
         stopButton.addActionListener(e -> disconnect());
-        restartButton.addActionListener(e -> restartConnection());
+        restartButton.addActionListener(e -> connectToServer());
 
         // Add Enter key listener for message input
         messagetosend.addActionListener(e -> sendMessage());
     }
 
+    // Also restarts: the old connection is closed and its session resumed on the new one
     private void connectToServer() {
+        int port;
         try {
             port = Integer.parseInt(portInput.getText().trim());
         } catch (NumberFormatException e) {
@@ -50,99 +54,80 @@ public class ClientGUI extends JFrame {
             return;
         }
 
-        textArea1.append("Connecting to server...\n");
-
-        try {
-            socket = new Socket(host, port);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            setStatus(true);
-            textArea1.append("Connected to server!\n");
-            new Thread(this::listenFromServer).start();
-        } catch (IOException e) {
-            setStatus(false);
-            JOptionPane.showMessageDialog(this, "Failed to connect: " + e.getMessage(), "Connection Error", JOptionPane.ERROR_MESSAGE);
+        ChatConnection previous = connection;
+        String token = null;
+        if (previous != null) {
+            token = previous.getSessionToken();
+            previous.disconnect();
         }
-    }
-
-    private void listenFromServer() {
-        try {
-            String response;
-            while ((response = in.readLine()) != null && connected) {
-                if(response.equals("__DISCONNECTED__")){
-                    SwingUtilities.invokeLater(() -> textArea1.append("Disconnected!\n"));
-                    disconnect();
-                    break;
-                }
-                String finalResponse = response;
-                SwingUtilities.invokeLater(() -> textArea1.append("Bot: " + finalResponse + "\n"));
-                if (response.equalsIgnoreCase("Sampai jumpa!")) {
-                    disconnect();
-                    break;
+        ChatConnection conn = new ChatConnection(host, port, framed, token);
+        connection = conn;
+        conn.connect(new ChatConnection.Listener() {
+            @Override
+            public void stateChanged(ChatConnection.State state, String detail) {
+                if (conn != connection) {
+                    return;
                 }
+                output.append(switch (state) {
+                    case CONNECTING -> "Connecting to server...";
+                    case CONNECTED -> "Connected to server!";
+                    case RECONNECTING -> "Connection lost, reconnecting: " + detail;
+                    case DISCONNECTED -> detail;
+                });
+                SwingUtilities.invokeLater(() -> {
+                    if (conn == connection) {
+                        setStatus(state);
+                    }
+                });
             }
-        } catch (IOException e) {
-            if (connected) {
-                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Connection lost: " + e.getMessage(), "Connection Error", JOptionPane.ERROR_MESSAGE));
-                setStatus(false);
+
+            @Override
+            public void received(String line) {
+                output.append("Bot: " + line);
             }
-        }
+        });
     }
 
     private void sendMessage() {
-        if (!connected) {
+        ChatConnection conn = connection;
+        if (conn == null || !conn.isConnected()) {
             JOptionPane.showMessageDialog(this, "Not connected to server!", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
         String message = messagetosend.getText().trim();
         if (!message.isEmpty()) {
-            textArea1.append("Anda: " + message + "\n");
-            out.println(message);
+            output.append("Anda: " + message);
+            if (!conn.send(message)) {
+                output.append("Send failed: not connected");
+            }
             messagetosend.setText("");
         }
     }
 
     private void disconnect() {
-        connected = false;
-        try {
-            if (out != null) {
-                out.close();
-            }
-            if (in != null) {
-                in.close();
-            }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-                textArea1.append("Disconnected from server.\n");
-            }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saat memutuskan koneksi: " + e.getMessage());
-        }
-        setStatus(false);
-    }
-
-    private void restartConnection() {
-        disconnect();
-        // Add small delay to ensure cleanup is complete
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        ChatConnection conn = connection;
+        if (conn != null) {
+            conn.disconnect();
         }
-        connectToServer();
     }
 
-    private void setStatus(boolean isConnected) {
-        this.connected = isConnected;
-        statusLabel.setText(isConnected ? "Connected" : "Not Connected");
-        statusLabel.setForeground(isConnected ? Color.GREEN : Color.RED);
+    private void setStatus(ChatConnection.State state) {
+        boolean isConnected = state == ChatConnection.State.CONNECTED;
+        boolean active = state != ChatConnection.State.DISCONNECTED;
+        statusLabel.setText(switch (state) {
+            case CONNECTING -> "Connecting...";
+            case CONNECTED -> "Connected";
+            case RECONNECTING -> "Reconnecting...";
+            case DISCONNECTED -> "Not Connected";
+        });
+        statusLabel.setForeground(isConnected ? Color.GREEN : active ? Color.ORANGE : Color.RED);
 
         // Enable/disable buttons based on connection status
-        connectButton.setEnabled(!isConnected);
+        connectButton.setEnabled(!active);
         sendButton.setEnabled(isConnected);
-        stopButton.setEnabled(isConnected);
+        stopButton.setEnabled(active);
         restartButton.setEnabled(true);
         messagetosend.setEnabled(isConnected);
     }
-}
\ No newline at end of file
+}
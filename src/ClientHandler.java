@@ -1,205 +1,707 @@
-import java.io.*;
-import java.net.Socket;
-import java.net.SocketException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ClientHandler extends Thread {
-    private static final AtomicInteger counter = new AtomicInteger(0);
+public class ClientHandler implements IdleTracker.Target {
+    static final EncodedLine DISCONNECT_SIGNAL = EncodedLine.of("__DISCONNECTED__", WireFrame.DISCONNECT);
+    // Always sent as text: it is the last line before the client starts reading frames
+    static final EncodedLine FRAMED_ACK = EncodedLine.of(WireFrame.MARKER);
+    // Heartbeat; only ever queued for framed clients
+    static final EncodedLine PING = EncodedLine.of(WireFrame.PING, WireFrame.CONTROL);
+    static final EncodedLine PONG = EncodedLine.of(WireFrame.PONG, WireFrame.CONTROL);
+    static final EncodedLine RATE_LIMITED_REPLY = EncodedLine.of("Terlalu banyak pesan, mohon tunggu sebentar.");
+    // The name intent's reply asks for the client's name; the next unmatched message answers it
+    static final String ASK_NAME_INTENT = "name";
+    private static final String[] NAME_PREFIXES = {"nama saya ", "namaku "};
+    private static final int MAX_NAME_CHARS = 32;
+    // How long an evicted client's writer may stay stuck before the socket is closed under it
+    private static final long EVICT_GRACE_SECONDS = 5;
 
-    private final Socket socket;
-    private final ServerGUI server;
+    private final ClientTransport transport;
+    private final ChatServer server;
     private final int clientID;
+    // Captured once, so the registry can still unindex the client after its socket is gone
+    private final InetAddress remoteInetAddress;
+    // Its /24 or /64, worked out once so registering and unregistering allocate nothing for it
+    private final long subnetKey;
     private final AtomicBoolean isConnected = new AtomicBoolean(true);
-    private PrintWriter out;
-    private BufferedReader in;
+    private volatile IdleTracker.Session idle;
+    // Set by the reading thread once the client asked for frames; text clients are never pinged
+    private volatile boolean framedPeer;
+    private final ResponsePacer pacer;
+    private final ResponseCache responseCache;
+    private final ServerMetrics metrics;
+    private final RateLimiter messageLimiter;
+    private final Responders responders;
+    private final SessionStore sessions;
+    // 0 until start(), or when the store had no room
+    private volatile long sessionToken;
+    private boolean sessionRequested;
+    // Reading thread only: a notice already went out for the current run of dropped messages
+    private boolean throttled;
+    private final Queue<PendingReply> pendingReplies = new ArrayDeque<>();
+    private long lastDueNanos;
+    private boolean leaving;
+    // Last rendered personal reply ("siapa saya"), only touched by the reading thread
+    private IntentMatcher.Intent personalIntent;
+    private EncodedLine personalReply;
+    // Set by generateResponse: the intent that answered, and whether it was only the default rule,
+    // in which case the responders get a go
+    private IntentMatcher.Intent matched;
+    private boolean unanswered;
+    // Completes once every reply handed to it has gone out, in message order; only the
+    // reading side replaces it
+    private volatile CompletableFuture<Void> replyChain = CompletableFuture.completedFuture(null);
 
-    public ClientHandler(Socket socket, ServerGUI server) {
-        this.socket = socket;
-        this.server = server;
-        this.clientID = counter.incrementAndGet();
-        this.setName("ClientHandler-" + clientID);
+    // Lines stay counted until the transport has taken them, so a stalled peer shows up here
+    private final OutboundLimits limits;
+    private final Queue<Outgoing> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedLines = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final LongAdder droppedLines = new LongAdder();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+    private volatile boolean transportClosed;
+    // Owned by whoever holds draining: set once FRAMED_ACK has been written
+    private boolean framed;
+    private final List<Outgoing> batch = new ArrayList<>();
+    private final List<EncodedLine> batchLines = new ArrayList<>();
+
+    private record PendingReply(EncodedLine line, long readNanos, long dueNanos, boolean closeAfter) {}
+
+    // Completion callbacks for queued lines, e.g. broadcast delivery counts
+    public interface Delivery {
+        void delivered();
 
-        try{
-            socket.setSoTimeout(30000);
-        } catch(SocketException e){
-            server.log("Warning: Socket timed out for client " + clientID);
+        void failed();
+    }
+
+    // readNanos is when the message being answered was read, 0 for lines that answer nothing
+    private record Outgoing(EncodedLine line, Delivery delivery, long readNanos) {
+        void fail() {
+            if (delivery != null) {
+                delivery.failed();
+            }
         }
     }
 
-    public void closeConnection() {
-        isConnected.set(false);
+    private static final Outgoing CLOSE = new Outgoing(null, null, 0);
 
-        try {
-            if(out != null && !socket.isClosed()) {
-                out.println("__DISCONNECTED__");
-                out.flush();
-            }
-            if (in != null) {
-                in.close();
-            }
-            if (out != null) {
-                out.close();
-            }
-            if (!socket.isClosed()) {
-                socket.close();
-            }
-            server.log("Client " + clientID + " disconnected");
+    public ClientHandler(ClientTransport transport, ChatServer server) {
+        this.transport = transport;
+        this.server = server;
+        this.pacer = server.getPacer();
+        this.responseCache = server.getResponseCache();
+        this.limits = server.getOutboundLimits();
+        this.metrics = server.getMetrics();
+        this.messageLimiter = server.getMessageLimiter();
+        this.responders = server.getResponders();
+        this.sessions = server.getSessions();
+        this.clientID = server.nextClientId();
+        this.remoteInetAddress = ClientRegistry.addressOf(transport.getRemoteAddress());
+        this.subnetKey = remoteInetAddress == null ? 0 : ClientRegistry.subnetKey(remoteInetAddress);
+    }
 
-        } catch (IOException e) {
-            server.log("Close Error: " + e.getMessage());
-        } finally {
+    // Queues the disconnect signal behind anything already pending; the writer closes the socket
+    public void closeConnection() {
+        if (signalDisconnect()) {
+            server.log("Client " + clientID + " disconnected");
             server.removeClient(this);
         }
     }
 
+    // Queues the disconnect signal and the close behind any pending output; false if the client
+    // was already disconnected. Shutdown signals every client this way, then logs and updates the
+    // registry once for all of them.
+    boolean signalDisconnect() {
+        if (!isConnected.getAndSet(false)) {
+            return false;
+        }
+        IdleTracker.Session session = idle;
+        if (session != null) {
+            session.cancel();
+        }
+        sessions.detach(sessionToken);
+
+        // The signal may push the queue past its bound; it is the last line this client gets
+        queuedLines.incrementAndGet();
+        queuedBytes.addAndGet(DISCONNECT_SIGNAL.length());
+        outbound.add(new Outgoing(DISCONNECT_SIGNAL, null, 0));
+        outbound.add(CLOSE);
+        scheduleDrain();
+        metrics.disconnects.increment();
+        server.record(TranscriptJournal.Kind.DISCONNECT, clientID, "");
+        return true;
+    }
+
+    // Replies still on their way: waiting on a responder, on the typing delay or in the queue
+    boolean hasPendingReplies() {
+        boolean paced;
+        synchronized (pendingReplies) {
+            paced = !pendingReplies.isEmpty();
+        }
+        return paced || !replyChain.isDone() || queuedLines.get() > 0;
+    }
+
+    // The disconnect signal went out and the socket is closed
+    boolean isClosed() {
+        return transport.isClosed();
+    }
+
+    // For shutdown past its deadline: drops whatever is still queued
+    void forceClose() {
+        isConnected.set(false);
+        abortTransport();
+    }
+
     public String getClientInfo(){
-        if(socket != null && !socket.isClosed()){
-            return "ID: " + clientID + "-" + socket.getRemoteSocketAddress();
+        return describe(clientID, transport);
+    }
+
+    static String describe(int clientID, ClientTransport transport){
+        if(transport.isOpen()){
+            return "ID: " + clientID + "-" + transport.getRemoteAddress();
         }
         return "ID: " + clientID + "-[Disconnected]";
     }
 
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
     public int getClientID() {
         return clientID;
     }
 
+    public InetAddress getRemoteInetAddress() {
+        return remoteInetAddress;
+    }
+
+    long getSubnetKey() {
+        return subnetKey;
+    }
+
     public boolean sendMessage(String message) {
-        if(!isConnected.get() || out == null || socket.isClosed())
+        return sendLine(EncodedLine.of(message));
+    }
+
+    // Queues the line for the writer; false if the client is already gone
+    public boolean sendLine(EncodedLine line) {
+        return enqueue(line, null, 0);
+    }
+
+    public boolean enqueue(EncodedLine line, Delivery delivery) {
+        return enqueue(line, delivery, 0);
+    }
+
+    private boolean enqueue(EncodedLine line, Delivery delivery, long readNanos) {
+        Outgoing item = new Outgoing(line, delivery, readNanos);
+        if (!isConnected.get() || !transport.isOpen()) {
+            item.fail();
+            return false;
+        }
+        // Concurrent senders may overshoot the bound by a line each; it only has to stop unbounded growth
+        if (isFull(line) && !makeRoom(line)) {
+            droppedLines.increment();
+            item.fail();
             return false;
+        }
+        queuedLines.incrementAndGet();
+        queuedBytes.addAndGet(line.length());
+        outbound.add(item);
+        scheduleDrain();
+        return true;
+    }
 
-        try{
-            out.println(message);
-            out.flush();
+    private boolean isFull(EncodedLine line) {
+        return queuedLines.get() >= limits.maxLines() || queuedBytes.get() + line.length() > limits.maxBytes();
+    }
 
-            if(out.checkError()){
-                server.log("Error sending message to client : " + clientID + "- connection maybe broken");
-                closeConnection();
+    // Applies the overflow policy; false if the new line is refused
+    private boolean makeRoom(EncodedLine line) {
+        switch (limits.overflow()) {
+            case DROP_NEW -> {
+                return false;
+            }
+            case DROP_OLDEST -> {
+                Outgoing oldest;
+                while (isFull(line) && (oldest = outbound.poll()) != null) {
+                    if (oldest == CLOSE || oldest.line() == DISCONNECT_SIGNAL) {
+                        // Lost a race with closeConnection(); the client is going away anyway
+                        closeTransport();
+                        return false;
+                    }
+                    settle(oldest);
+                    droppedLines.increment();
+                    oldest.fail();
+                }
+                return true;
+            }
+            default -> {
+                evict();
                 return false;
             }
-            return true;
-        } catch (Exception e){
-            server.log("Failed to send message to client : " + clientID + ": " + e.getMessage());
-            closeConnection();
-            return false;
         }
+    }
 
+    // Slow consumer: discard its backlog so the disconnect signal goes out next
+    private void evict() {
+        if (!isConnected.get()) {
+            return;
+        }
+        server.log("Client " + clientID + " evicted: outbound queue full (" + queuedLines.get() + " lines, " +
+                queuedBytes.get() + " bytes pending)");
+        Outgoing stale;
+        while ((stale = outbound.poll()) != null) {
+            settle(stale);
+            droppedLines.increment();
+            stale.fail();
+        }
+        closeConnection();
+        scheduleAbort();
     }
 
-    @Override
-    public void run() {
+    // A writer blocked on a peer that stopped reading never reaches the close
+    private void scheduleAbort() {
         try {
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            server.getMaintenance().schedule(this::abortTransport, EVICT_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException | NullPointerException e) {
+            abortTransport();
+        }
+    }
 
-            server.log("Client " + clientID + " connected from : " + socket.getRemoteSocketAddress());
-            sendMessage("Selamat datang di Chatbot Server! Anda adalah client #" + clientID);
-            sendMessage("Ketik 'help' untuk melihat perintah yang tersedia atau 'selamat tinggal' untuk keluar.");
+    @Override
+    public void idlePing() {
+        if (framedPeer) {
+            sendLine(PING);
+        }
+    }
 
-            String line;
-            while (isConnected.get() && (line = in.readLine()) != null) {
-                line = line.trim();
-                if(line.isEmpty()){
-                    continue;
-                }
-                server.log("Client " + clientID + " says: " + line);
+    // A dead peer may also have stopped reading, so the close is backed by an abort
+    @Override
+    public void idleTimeout(long idleMillis) {
+        if (!isConnected.get()) {
+            return;
+        }
+        metrics.idleTimeouts.increment();
+        server.log("Client " + clientID + " idle for " + idleMillis / 1000 + " s, disconnecting");
+        closeConnection();
+        scheduleAbort();
+    }
 
-                String response = generateResponse(line);
+    private void settle(Outgoing item) {
+        if (item.line() != null) {
+            queuedLines.decrementAndGet();
+            queuedBytes.addAndGet(-item.line().length());
+        }
+    }
 
-                // Add artificial delay
-                if(!line.equalsIgnoreCase("selamat tinggal")){
-                    try{
-                        Thread.sleep(500 + (int) (Math.random() * 500));
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                server.getWriterPool().execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                drain();
+            }
+        }
+    }
 
-                if(!sendMessage(response)){
-                    break;
+    // At most one drain runs per client, so lines reach the socket in the order they were queued.
+    // Whatever is pending when the writer wakes up is coalesced into writes of up to batchBytes.
+    private void drain() {
+        List<Outgoing> batch = this.batch;
+        List<EncodedLine> lines = batchLines;
+        Outgoing next = null;
+        do {
+            while (next != null || (next = outbound.poll()) != null) {
+                if (next == CLOSE || transportClosed) {
+                    settle(next);
+                    closeTransport();
+                    next.fail();
+                    next = null;
+                    continue;
                 }
-
-                if (line.equalsIgnoreCase("selamat tinggal")) {
-                    break;
+                int bytes = 0;
+                while (next != null && next != CLOSE && bytes < limits.batchBytes()) {
+                    EncodedLine line = framed ? next.line().framed() : next.line();
+                    batch.add(next);
+                    lines.add(line);
+                    bytes += line.length();
+                    // Lines after the acknowledgement, even in this same write, go out as frames
+                    framed |= next.line() == FRAMED_ACK;
+                    next = outbound.poll();
                 }
+                writeBatch(batch, lines);
+                batch.clear();
+                lines.clear();
             }
+            draining.set(false);
+        } while (!outbound.isEmpty() && draining.compareAndSet(false, true));
+    }
 
+    private void writeBatch(List<Outgoing> batch, List<EncodedLine> lines) {
+        String error = null;
+        try {
+            transport.write(lines);
+            recordWritten(batch, lines);
         } catch (IOException e) {
-            if(isConnected.get()){
-                server.log("Client " + clientID + " connection error: " + e.getMessage());
+            error = "Error sending message to client : " + clientID + "- " + e.getMessage();
+        } catch (RuntimeException e) {
+            error = "Failed to send message to client : " + clientID + ": " + e.getMessage();
+        }
+        for (Outgoing item : batch) {
+            settle(item);
+            if (error != null) {
+                item.fail();
+            } else if (item.delivery() != null) {
+                item.delivery().delivered();
             }
-        } catch(Exception e){
-            server.log("Unexpected error with client " + clientID + ": " + e.getMessage());
-        } finally {
+        }
+        if (error != null) {
+            writeFailed(error);
+        }
+    }
+
+    private void writeFailed(String error) {
+        closeTransport();
+        if (isConnected.get()) {
+            server.log(error);
             closeConnection();
         }
     }
 
-    private String generateResponse(String input) {
-        if (input == null) return "Pesan tidak valid.";
+    // The reading thread writes its own reply when nothing is queued ahead of it, skipping the
+    // queue node, the writer task and the handoff. False when the reply has to be queued.
+    private boolean writeInline(EncodedLine reply, long readNanos) {
+        if (!outbound.isEmpty() || !draining.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            if (!outbound.isEmpty() || transportClosed || !isConnected.get()) {
+                return false;
+            }
+            EncodedLine line = framed ? reply.framed() : reply;
+            try {
+                transport.write(line);
+                metrics.responseLatency.recordNanos(System.nanoTime() - readNanos);
+                metrics.messagesOut.increment();
+                metrics.bytesOut.add(line.length());
+            } catch (IOException e) {
+                writeFailed("Error sending message to client : " + clientID + "- " + e.getMessage());
+            } catch (RuntimeException e) {
+                writeFailed("Failed to send message to client : " + clientID + ": " + e.getMessage());
+            }
+            return true;
+        } finally {
+            draining.set(false);
+            // Lines queued while this thread held the writer role
+            if (!outbound.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
 
-        String lowerInput = input.toLowerCase().trim();
+    private void recordWritten(List<Outgoing> batch, List<EncodedLine> lines) {
+        long now = System.nanoTime();
+        long bytes = 0;
+        for (EncodedLine line : lines) {
+            bytes += line.length();
+        }
+        for (Outgoing item : batch) {
+            if (item.readNanos() != 0) {
+                metrics.responseLatency.recordNanos(now - item.readNanos());
+            }
+        }
+        metrics.messagesOut.add(batch.size());
+        metrics.bytesOut.add(bytes);
+    }
 
-        return switch (lowerInput) {
-            case "halo", "hai", "hello" -> "Halo juga! Senang bertemu dengan Anda.";
-            case "apa kabar", "apa kabar?" -> "Kabar baik! Bagaimana dengan Anda?";
-            case "siapa namamu", "siapa namamu?" -> "Saya adalah ChatBot Server! Saya siap membantu Anda.";
-            case "selamat tinggal", "bye", "goodbye" -> "Sampai jumpa! Terima kasih telah menggunakan layanan kami.";
-            case "help", "bantuan" -> generateHelpMessage();
-            case "waktu", "jam berapa", "waktu sekarang" -> "Maaf, saya belum bisa memberikan informasi waktu saat ini.";
-            case "siapa saya", "siapa saya?" -> "Anda adalah client #" + clientID + " yang terhubung dari " +
-                    socket.getRemoteSocketAddress();
-            case "terima kasih", "thanks", "thank you" -> "Sama-sama! Senang bisa membantu Anda.";
-            case "test", "testing" -> "Test berhasil! Koneksi Anda berfungsi dengan baik.";
-            // Easter eggs
-            case "ping" -> "pong!";
-            case "knock knock" -> "Who's there?";
-            case "marco" -> "polo!";
+    private void closeTransport() {
+        if (transportClosed) {
+            return;
+        }
+        transportClosed = true;
+        try {
+            transport.close();
+        } catch (IOException e) {
+            server.log("Close Error: " + e.getMessage());
+        }
+    }
 
-            default -> {
-                // Try to provide more helpful responses for common patterns
-                if (lowerInput.contains("nama")) {
-                    yield "Nama saya ChatBot Server. Apa nama Anda?";
-                } else if (lowerInput.contains("umur") || lowerInput.contains("usia")) {
-                    yield "Saya adalah program komputer, jadi saya tidak memiliki usia seperti manusia.";
-                } else if (lowerInput.contains("bagaimana")) {
-                    yield "Bisa Anda jelaskan lebih spesifik apa yang ingin Anda ketahui?";
-                } else if (lowerInput.contains("dimana")) {
-                    yield "Saya berada di server ini, melayani client seperti Anda!";
-                } else if (lowerInput.contains("kapan")) {
-                    yield "Maaf, saya tidak memiliki informasi waktu yang spesifik.";
-                } else if (lowerInput.length() > 100) {
-                    yield "Pesan Anda terlalu panjang. Coba gunakan kalimat yang lebih pendek.";
-                } else {
-                    yield "Maaf, saya tidak mengerti '" + input + "'. Ketik 'help' untuk melihat perintah yang tersedia.";
+    private void abortTransport() {
+        transportClosed = true;
+        try {
+            transport.abort();
+        } catch (IOException e) {
+            server.log("Close Error: " + e.getMessage());
+        }
+    }
+
+    public int getQueuedLines() {
+        return Math.max(0, queuedLines.get());
+    }
+
+    public long getQueuedBytes() {
+        return Math.max(0, queuedBytes.get());
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.sum();
+    }
+
+    // "queue 12 lines / 3 KB, 4 dropped"
+    public String getQueueInfo() {
+        String info = "queue " + getQueuedLines() + " lines / " + (getQueuedBytes() + 1023) / 1024 + " KB";
+        long dropped = getDroppedLines();
+        return dropped > 0 ? info + ", " + dropped + " dropped" : info;
+    }
+
+    // Called once by the connection engine before the first line is delivered
+    public void start() {
+        IdleTracker tracker = server.getIdleTracker();
+        if (tracker != null) {
+            idle = tracker.register(this);
+        }
+        sessionToken = sessions.create(clientID);
+        server.log("Client " + clientID + " connected from : " + transport.getRemoteAddress());
+        server.record(TranscriptJournal.Kind.CONNECT, clientID, String.valueOf(transport.getRemoteAddress()));
+        sendMessage("Selamat datang di Chatbot Server! Anda adalah client #" + clientID);
+        sendMessage("Ketik 'help' untuk melihat perintah yang tersedia atau 'selamat tinggal' untuk keluar.");
+    }
+
+    // Returns false when the connection should be closed right away. The line may be a view
+    // the decoder refills afterwards, so nothing here keeps a reference to it.
+    public boolean handleLine(CharSequence line) {
+        long readNanos = System.nanoTime();
+        IdleTracker.Session session = idle;
+        if (session != null) {
+            session.touch(readNanos);
+        }
+        if (line == LineDecoder.PONG) {
+            return true;
+        }
+        if (line == LineDecoder.PING) {
+            return sendLine(PONG);
+        }
+        if (line == LineDecoder.NEGOTIATED) {
+            framedPeer = true;
+            if (session != null) {
+                session.setFramed();
+            }
+            server.log("Client " + clientID + " switched to framed protocol");
+            return sendLine(FRAMED_ACK);
+        }
+        if (line == LineDecoder.PEER_DISCONNECT) {
+            return false;
+        }
+        if (line == LineDecoder.INVALID_FRAME) {
+            server.log("Client " + clientID + " sent an invalid frame or an overlong line");
+            return false;
+        }
+        metrics.messagesIn.increment();
+        line = CharView.trim(line);
+        // While the server drains, replies already under way go out but nothing new is started
+        if(line.isEmpty() || leaving || !isConnected.get() || server.isDraining()){
+            return true;
+        }
+        // Once per connection; later requests are ignored rather than answered as chat
+        if (CharView.startsWithIgnoreCase(line, WireFrame.SESSION)) {
+            if (sessionRequested) {
+                return true;
+            }
+            sessionRequested = true;
+            return resumeSession(line);
+        }
+        // Over the limit the message is dropped; only the first of a run gets a reply
+        if (!messageLimiter.tryAcquire(remoteInetAddress, readNanos)) {
+            if (!throttled) {
+                throttled = true;
+                sendLine(RATE_LIMITED_REPLY);
+            }
+            return true;
+        }
+        throttled = false;
+        server.log("Client ", clientID, " says: ", line);
+        server.record(TranscriptJournal.Kind.MESSAGE, clientID, line);
+
+        EncodedLine response = generateResponse(line);
+        long token = sessionToken;
+        if (token != 0) {
+            response = converse(token, line, response);
+        }
+        boolean goodbye = CharView.equalsIgnoreCase(line, "selamat tinggal");
+        leaving = goodbye;
+
+        CompletableFuture<EncodedLine> answer = null;
+        if (unanswered && responders.isEnabled()) {
+            answer = responders.respond(clientID, line.toString(), response);
+        }
+        CompletableFuture<Void> chain = replyChain;
+        if (answer == null && chain.isDone()) {
+            return reply(response, readNanos, goodbye, transport.writesInline());
+        }
+        // Anything after a message still waiting on a responder waits its turn behind it
+        CompletableFuture<EncodedLine> next = answer != null ? answer : CompletableFuture.completedFuture(response);
+        replyChain = chain.thenCombine(next, (done, reply) -> reply)
+                .thenAccept(reply -> replyLater(reply, readNanos, goodbye));
+        return true;
+    }
+
+    private void replyLater(EncodedLine response, long readNanos, boolean goodbye) {
+        try {
+            if (!reply(response, readNanos, goodbye, false)) {
+                closeConnection();
+            }
+        } catch (RuntimeException e) {
+            // Keeps the chain going for the replies behind this one
+            server.log("Reply to client " + clientID + " failed: " + e.getMessage());
+        }
+    }
+
+    // Returns false when the connection should be closed right away
+    private boolean reply(EncodedLine response, long readNanos, boolean goodbye, boolean inline) {
+        if (!pacer.isEnabled()) {
+            return deliver(response, readNanos, inline) && !goodbye;
+        }
+
+        // The goodbye reply is not delayed, but still queues behind replies already pending
+        long due = Math.max(lastDueNanos, System.nanoTime() + (goodbye ? 0 : pacer.nextDelayNanos()));
+        lastDueNanos = due;
+        synchronized (pendingReplies) {
+            pendingReplies.add(new PendingReply(response, readNanos, due, goodbye));
+        }
+        pacer.release(this::releaseDueReplies, due);
+        return true;
+    }
+
+    // "__SESSION__" asks for this connection's token; "__SESSION__ <token>" swaps in an earlier
+    // session, and the fresh one made at connect is dropped. Either way the reply names the token.
+    private boolean resumeSession(CharSequence line) {
+        long requested = SessionStore.parse(CharView.trim(line.subSequence(WireFrame.SESSION.length(), line.length())));
+        long fresh = sessionToken;
+        if (requested != 0 && requested != fresh && sessions.attach(requested)) {
+            sessionToken = requested;
+            sessions.remove(fresh);
+            personalIntent = null;
+            SessionStore.Info info = sessions.info(requested);
+            String name = info == null ? null : info.name();
+            server.log("Client " + clientID + " resumed the session of client " + (info == null ? "?" : info.number()));
+            return sendLine(EncodedLine.of(WireFrame.SESSION + " " + SessionStore.format(requested)))
+                    && sendMessage(name != null ? "Selamat datang kembali, " + name + "!" : "Selamat datang kembali!");
+        }
+        return fresh == 0 || sendLine(EncodedLine.of(WireFrame.SESSION + " " + SessionStore.format(fresh)));
+    }
+
+    // Keeps the session's context up to date; a name the client gives is remembered and greeted
+    private EncodedLine converse(long token, CharSequence line, EncodedLine response) {
+        String name = null;
+        for (String prefix : NAME_PREFIXES) {
+            if (CharView.startsWithIgnoreCase(line, prefix)) {
+                name = line.subSequence(prefix.length(), line.length()).toString().trim();
+                break;
+            }
+        }
+        boolean askedName = name == null && ASK_NAME_INTENT.equals(matched.name());
+        boolean wasAsked = sessions.recordMessage(token, matched.name(), askedName);
+        if (name == null && wasAsked && unanswered && line.length() <= MAX_NAME_CHARS) {
+            name = line.toString();
+        }
+        if (name == null || name.isEmpty()) {
+            return response;
+        }
+        sessions.setName(token, name);
+        personalIntent = null;
+        unanswered = false;
+        return EncodedLine.of("Senang berkenalan, " + name + "!");
+    }
+
+    // Timer callbacks may fire out of order, so each one delivers every reply that is due, oldest first
+    private void releaseDueReplies() {
+        synchronized (pendingReplies) {
+            long now = System.nanoTime();
+            PendingReply reply;
+            while ((reply = pendingReplies.peek()) != null && reply.dueNanos() - now <= 0) {
+                pendingReplies.poll();
+                if (!deliver(reply.line(), reply.readNanos(), false)) {
+                    pendingReplies.clear();
+                    return;
+                }
+                if (reply.closeAfter()) {
+                    pendingReplies.clear();
+                    closeConnection();
+                    return;
                 }
             }
-        };
+        }
+    }
+
+    private boolean deliver(EncodedLine reply, long readNanos, boolean inline) {
+        if (!(inline && writeInline(reply, readNanos)) && !enqueue(reply, null, readNanos)) {
+            return false;
+        }
+        server.record(TranscriptJournal.Kind.RESPONSE, clientID, reply.text());
+        return true;
+    }
+
+    // Only a cache miss turns the input into a String
+    private EncodedLine generateResponse(CharSequence line) {
+        IntentMatcher matcher = server.getIntents().current();
+        ResponseCache.Entry cached = responseCache.get(line, matcher);
+        if (cached != null) {
+            metrics.intentHit(cached.intent().name());
+            matched = cached.intent();
+            unanswered = matcher.isFallback(matched);
+            return cached.reply();
+        }
+
+        String input = line.toString();
+        IntentMatcher.Intent intent = matcher.match(input);
+        metrics.intentHit(intent.name());
+        matched = intent;
+        unanswered = matcher.isFallback(intent);
+        if (!intent.templated()) {
+            responseCache.put(input, matcher, intent, intent.encoded());
+            return intent.encoded();
+        }
+        if (intent.personal() && !intent.response().contains("{input}")) {
+            if (intent != personalIntent) {
+                personalReply = EncodedLine.of(render(intent.response(), input));
+                personalIntent = intent;
+            }
+            return personalReply;
+        }
+        EncodedLine reply = EncodedLine.of(render(intent.response(), input));
+        responseCache.put(input, matcher, intent, reply);
+        return reply;
     }
 
-    private String generateHelpMessage() {
-        return """
-               Perintah yang tersedia:
-               • halo/hai - Menyapa bot
-               • apa kabar - Menanyakan kabar
-               • siapa namamu - Menanyakan nama bot
-               • help/bantuan - Menampilkan pesan ini
-               • siapa saya - Informasi tentang koneksi Anda
-               • test - Mengetes koneksi
-               • terima kasih - Mengucapkan terima kasih
-               • selamat tinggal - Keluar dari chat
-               
-               Anda juga bisa mencoba perintah lainnya!""";
+    private String render(String template, String input) {
+        // {input} goes last so placeholders typed by the user are left alone
+        String name = template.contains("{name}") ? sessions.getName(sessionToken) : null;
+        return template.replace("{id}", String.valueOf(clientID))
+                .replace("{address}", String.valueOf(transport.getRemoteAddress()))
+                .replace("{name}", name != null ? name : "belum saya ketahui")
+                .replace("{input}", input);
     }
 
     public boolean isConnected(){
-        return isConnected.get() && !socket.isClosed();
+        return isConnected.get() && transport.isOpen();
     }
 
     public String getConnectioninfo(){
-        if(socket != null && !socket.isClosed()){
-            return String.format("Client %d connected from %s", clientID, socket.getRemoteSocketAddress());
+        if(transport.isOpen()){
+            return String.format("Client %d connected from %s", clientID, transport.getRemoteAddress());
         }
         return String.format("Client %d [Disconnected]", clientID);
     }
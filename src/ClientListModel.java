@@ -0,0 +1,150 @@
+import javax.swing.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Client list rows sorted by ID. Server threads only queue deltas; the EDT applies them in
+// batches from a timer, so a connection storm costs one update per tick, not one per client.
+public class ClientListModel extends AbstractListModel<ClientHandler> {
+    // Above this many removals in one tick, compact the rows in one pass instead of one event each
+    private static final int BULK_REMOVALS = 16;
+
+    private record Delta(ClientHandler handler, boolean added) {}
+
+    private final Queue<Delta> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refresh = new AtomicBoolean(false);
+    private final ArrayList<ClientHandler> rows = new ArrayList<>();
+
+    // Any thread
+    public void added(ClientHandler handler) {
+        pending.add(new Delta(handler, true));
+    }
+
+    public void removed(ClientHandler handler) {
+        pending.add(new Delta(handler, false));
+    }
+
+    // Asks the next tick to repaint and, if rows have drifted from the server, resync
+    public void refresh() {
+        refresh.set(true);
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public ClientHandler getElementAt(int index) {
+        return rows.get(index);
+    }
+
+    // EDT only. Returns true if anything visible may have changed.
+    public boolean apply(ChatServer server) {
+        boolean refreshing = refresh.getAndSet(false);
+        if (pending.isEmpty()) {
+            if (refreshing && rows.size() != server.getClients().size()) {
+                resync(server);
+            }
+            return refreshing;
+        }
+
+        // A client that came and went within one tick never reaches the list
+        Map<Integer, ClientHandler> adds = new HashMap<>();
+        Set<Integer> removals = new HashSet<>();
+        Delta delta;
+        while ((delta = pending.poll()) != null) {
+            int id = delta.handler().getClientID();
+            if (delta.added()) {
+                adds.put(id, delta.handler());
+            } else if (adds.remove(id) == null) {
+                removals.add(id);
+            }
+        }
+        applyRemovals(removals);
+        applyAdds(adds.values());
+        if (refreshing && rows.size() != server.getClients().size()) {
+            resync(server);
+        }
+        return true;
+    }
+
+    private void applyRemovals(Set<Integer> removals) {
+        if (removals.isEmpty()) {
+            return;
+        }
+        if (removals.size() <= BULK_REMOVALS) {
+            for (int id : removals) {
+                int index = indexOf(id);
+                if (index >= 0) {
+                    rows.remove(index);
+                    fireIntervalRemoved(this, index, index);
+                }
+            }
+            return;
+        }
+        int before = rows.size();
+        rows.removeIf(ch -> removals.contains(ch.getClientID()));
+        int after = rows.size();
+        if (after < before) {
+            fireIntervalRemoved(this, after, before - 1);
+        }
+        if (after > 0) {
+            fireContentsChanged(this, 0, after - 1);
+        }
+    }
+
+    // IDs only grow, so new clients nearly always go on the end
+    private void applyAdds(Collection<ClientHandler> adds) {
+        if (adds.isEmpty()) {
+            return;
+        }
+        List<ClientHandler> sorted = new ArrayList<>(adds);
+        sorted.sort(Comparator.comparingInt(ClientHandler::getClientID));
+        int first = rows.size();
+        if (rows.isEmpty() || rows.get(rows.size() - 1).getClientID() < sorted.get(0).getClientID()) {
+            rows.addAll(sorted);
+            fireIntervalAdded(this, first, rows.size() - 1);
+            return;
+        }
+        for (ClientHandler ch : sorted) {
+            int index = indexOf(ch.getClientID());
+            if (index < 0) {
+                index = -index - 1;
+                rows.add(index, ch);
+                fireIntervalAdded(this, index, index);
+            }
+        }
+    }
+
+    private void resync(ChatServer server) {
+        int before = rows.size();
+        rows.clear();
+        rows.addAll(server.getClients().snapshot());
+        rows.sort(Comparator.comparingInt(ClientHandler::getClientID));
+        if (before > 0) {
+            fireIntervalRemoved(this, 0, before - 1);
+        }
+        if (!rows.isEmpty()) {
+            fireIntervalAdded(this, 0, rows.size() - 1);
+        }
+    }
+
+    // Binary search by client ID; -(insertion point) - 1 when absent
+    private int indexOf(int clientID) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = rows.get(mid).getClientID();
+            if (id < clientID) {
+                low = mid + 1;
+            } else if (id > clientID) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
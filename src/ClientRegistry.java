@@ -0,0 +1,162 @@
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Connected clients keyed by ID, with secondary indexes by remote IP and by subnet
+// (/24 for IPv4, /64 for IPv6). Adding, removing and looking up a client are O(1);
+// iteration is weakly consistent and never blocks connects or disconnects. Subnets are keyed
+// by their network bits as a number, an int for IPv4 and a long for IPv6.
+public class ClientRegistry {
+    static final int IPV4_PREFIX = 24;
+    static final int IPV6_PREFIX = 64;
+    // Only literals are parsed, so a lookup never turns into a DNS query
+    private static final Pattern IP_LITERAL = Pattern.compile("[0-9.]+|[0-9a-fA-F:.]*:[0-9a-fA-F:.]*");
+
+    private final Map<Integer, ClientHandler> byId = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Set<ClientHandler>> byAddress = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<ClientHandler>> bySubnet4 = new ConcurrentHashMap<>();
+    private final Map<Long, Set<ClientHandler>> bySubnet6 = new ConcurrentHashMap<>();
+
+    public void add(ClientHandler handler) {
+        byId.put(handler.getClientID(), handler);
+        InetAddress address = handler.getRemoteInetAddress();
+        if (address != null) {
+            index(byAddress, address, handler);
+            if (address instanceof Inet4Address) {
+                index(bySubnet4, (int) handler.getSubnetKey(), handler);
+            } else {
+                index(bySubnet6, handler.getSubnetKey(), handler);
+            }
+        }
+    }
+
+    // False if the client was not registered (or already removed)
+    public boolean remove(ClientHandler handler) {
+        if (!byId.remove(handler.getClientID(), handler)) {
+            return false;
+        }
+        InetAddress address = handler.getRemoteInetAddress();
+        if (address != null) {
+            unindex(byAddress, address, handler);
+            if (address instanceof Inet4Address) {
+                unindex(bySubnet4, (int) handler.getSubnetKey(), handler);
+            } else {
+                unindex(bySubnet6, handler.getSubnetKey(), handler);
+            }
+        }
+        return true;
+    }
+
+    // compute() runs under the bin lock, so an emptied set is never dropped while another thread adds to it
+    private static <K> void index(Map<K, Set<ClientHandler>> index, K key, ClientHandler handler) {
+        index.compute(key, (k, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet(2);
+            }
+            set.add(handler);
+            return set;
+        });
+    }
+
+    private static <K> void unindex(Map<K, Set<ClientHandler>> index, K key, ClientHandler handler) {
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(handler);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public ClientHandler get(int clientID) {
+        return byId.get(clientID);
+    }
+
+    public Collection<ClientHandler> fromAddress(InetAddress address) {
+        Set<ClientHandler> set = byAddress.get(address);
+        return set == null ? List.of() : Collections.unmodifiableSet(set);
+    }
+
+    public Collection<ClientHandler> fromSubnet(InetAddress address) {
+        long key = subnetKey(address);
+        Set<ClientHandler> set = address instanceof Inet4Address ? bySubnet4.get((int) key) : bySubnet6.get(key);
+        return set == null ? List.of() : Collections.unmodifiableSet(set);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public int addressCount() {
+        return byAddress.size();
+    }
+
+    // Live, weakly consistent view for counting and reporting
+    public Collection<ClientHandler> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    // Point-in-time copy, e.g. the targets of one broadcast
+    public List<ClientHandler> snapshot() {
+        return new ArrayList<>(byId.values());
+    }
+
+    public void clear() {
+        byId.clear();
+        byAddress.clear();
+        bySubnet4.clear();
+        bySubnet6.clear();
+    }
+
+    // Client ID, IP ("10.0.0.7") or subnet ("10.0.0.0/24", "2001:db8::/64"); empty if nothing matches
+    public Collection<ClientHandler> find(String target) {
+        try {
+            ClientHandler handler = get(Integer.parseInt(target));
+            return handler == null ? List.of() : List.of(handler);
+        } catch (NumberFormatException ignored) {
+        }
+        int slash = target.indexOf('/');
+        InetAddress address = parseLiteral(slash < 0 ? target : target.substring(0, slash));
+        if (address == null) {
+            return List.of();
+        }
+        if (slash < 0) {
+            return fromAddress(address);
+        }
+        String prefix = target.substring(slash + 1);
+        int expected = address.getAddress().length == 4 ? IPV4_PREFIX : IPV6_PREFIX;
+        if (!prefix.equals(String.valueOf(expected))) {
+            throw new IllegalArgumentException("Only /" + IPV4_PREFIX + " (IPv4) and /" + IPV6_PREFIX +
+                    " (IPv6) subnets are indexed");
+        }
+        return fromSubnet(address);
+    }
+
+    static InetAddress parseLiteral(String text) {
+        if (!IP_LITERAL.matcher(text).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(text);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    static InetAddress addressOf(SocketAddress remote) {
+        return remote instanceof InetSocketAddress inet ? inet.getAddress() : null;
+    }
+
+    // The /24 of an IPv4 address in the low 32 bits, or the /64 of an IPv6 address
+    static long subnetKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int prefix = bytes.length == 4 ? IPV4_PREFIX : IPV6_PREFIX;
+        long key = 0;
+        for (int i = 0; i < Math.min(bytes.length, 8); i++) {
+            key = key << 8 | (i < prefix / 8 ? bytes[i] & 0xFF : 0);
+        }
+        return key;
+    }
+}
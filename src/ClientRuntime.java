@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Hosts many chat sessions in one JVM, for soak tests and for mainClient. Each session is a
+// ChatConnection (virtual threads, reconnect with backoff) plus a few recent lines; pacing
+// the scripts is left to one shared timer thread, so an idle session costs no thread of its
+// own beyond its blocked reader. Sessions can be watched and driven from ClientViewer.
+//
+//   java -Dchat.client.sessions=2000 -Dchat.client.script=script.txt mainClient --headless --port 5000
+public class ClientRuntime {
+    // Lines kept per session for the viewer
+    private static final int RECENT_LINES = 20;
+    private static final List<String> DEFAULT_SCRIPT = List.of("halo", "siapa saya", "nama saya Tester{n}",
+            "siapa nama saya", "help", "ping");
+
+    private final String host;
+    private final int port;
+    private final boolean framed;
+    private final List<String> script;
+    private final long thinkMillis;
+    private final long rampMillis;
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService timer;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger ended = new AtomicInteger();
+    private final LongAdder reconnects = new LongAdder();
+
+    public final class Session implements ChatConnection.Listener {
+        private final int number;
+        private final ChatConnection connection;
+        private volatile ChatConnection.State state = ChatConnection.State.CONNECTING;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final String[] recent = new String[RECENT_LINES];
+        private int recentCount;
+        private int step;
+        private boolean stepping;
+        // Under lock: whether the ramp-up has connected it, and whether disconnect() has come
+        private boolean started;
+        private boolean closed;
+        private volatile Consumer<String> watcher;
+
+        Session(int number) {
+            this.number = number;
+            this.connection = new ChatConnection(host, port, framed, null);
+        }
+
+        @Override
+        public void stateChanged(ChatConnection.State newState, String detail) {
+            ChatConnection.State old = state;
+            state = newState;
+            if (newState == ChatConnection.State.CONNECTED) {
+                connected.incrementAndGet();
+                schedule();
+            } else if (old == ChatConnection.State.CONNECTED) {
+                connected.decrementAndGet();
+            }
+            if (newState == ChatConnection.State.RECONNECTING) {
+                reconnects.increment();
+            } else if (newState == ChatConnection.State.DISCONNECTED) {
+                ended.incrementAndGet();
+            }
+            remember("* " + newState.name().toLowerCase() + (detail == null ? "" : ": " + detail));
+        }
+
+        @Override
+        public void received(String line) {
+            received.increment();
+            remember("Bot: " + line);
+        }
+
+        public boolean send(String message) {
+            if (!connection.send(message)) {
+                return false;
+            }
+            sent.increment();
+            remember("Anda: " + message);
+            return true;
+        }
+
+        // Next script line after a think time; one step pending at a time, across reconnects
+        private void schedule() {
+            lock.lock();
+            try {
+                if (stepping || step >= script.size()) {
+                    return;
+                }
+                stepping = true;
+            } finally {
+                lock.unlock();
+            }
+            long delay = thinkMillis / 2 + ThreadLocalRandom.current().nextLong(thinkMillis + 1);
+            timer.schedule(this::step, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void step() {
+            String message;
+            lock.lock();
+            try {
+                stepping = false;
+                if (state != ChatConnection.State.CONNECTED || step >= script.size()) {
+                    return;
+                }
+                message = script.get(step++).replace("{n}", String.valueOf(number));
+            } finally {
+                lock.unlock();
+            }
+            send(message);
+            schedule();
+        }
+
+        private void remember(String line) {
+            Consumer<String> current;
+            lock.lock();
+            try {
+                recent[recentCount++ % RECENT_LINES] = line;
+                current = watcher;
+            } finally {
+                lock.unlock();
+            }
+            if (current != null) {
+                current.accept(line);
+            }
+        }
+
+        // Replays the recent lines to watcher, then passes it every new one; null detaches
+        public void watch(Consumer<String> newWatcher) {
+            lock.lock();
+            try {
+                watcher = newWatcher;
+                if (newWatcher != null) {
+                    for (int i = Math.max(0, recentCount - RECENT_LINES); i < recentCount; i++) {
+                        newWatcher.accept(recent[i % RECENT_LINES]);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void start() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                started = true;
+                connection.connect(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Ends the session for good; one whose connect is still scheduled never connects, and is
+        // counted as ended here
+        public void disconnect() {
+            boolean connecting;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                connecting = started;
+            } finally {
+                lock.unlock();
+            }
+            if (connecting) {
+                connection.disconnect();
+            } else {
+                state = ChatConnection.State.DISCONNECTED;
+                ended.incrementAndGet();
+                remember("* disconnected: never started");
+            }
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public ChatConnection.State getState() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number + " " + state.name().toLowerCase();
+        }
+    }
+
+    public ClientRuntime(String host, int port, boolean framed, List<String> script, long thinkMillis, long rampMillis) {
+        this.host = host;
+        this.port = port;
+        this.framed = framed;
+        this.script = List.copyOf(script);
+        this.thinkMillis = Math.max(0, thinkMillis);
+        this.rampMillis = Math.max(0, rampMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ClientRuntime-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // chat.client.script, one message per line ("{n}" is the session number); the built-in
+    // script when unset, none when scripted is false
+    public static ClientRuntime fromConfig(String host, int port, ServerConfig options, boolean scripted)
+            throws IOException {
+        String file = options.getString("chat.client.script", null);
+        List<String> script = new ArrayList<>();
+        if (file != null) {
+            for (String line : Files.readAllLines(Path.of(file), StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    script.add(line.trim());
+                }
+            }
+        } else if (scripted) {
+            script.addAll(DEFAULT_SCRIPT);
+        }
+        boolean framed = !"text".equalsIgnoreCase(options.getString("chat.client.protocol", "framed"));
+        return new ClientRuntime(host, port, framed, script, options.getInt("chat.client.thinkMs", 2000),
+                options.getInt("chat.client.rampMs", 1000));
+    }
+
+    // Opens count more sessions, spread over the ramp-up time
+    public void open(int count) {
+        int first = sessions.size() + 1;
+        for (int i = 0; i < count; i++) {
+            Session session = new Session(first + i);
+            sessions.add(session);
+            long delay = count > 1 ? rampMillis * i / count : 0;
+            timer.schedule(session::start, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    // Ends every session, sending each its DISCONNECT
+    public void close() {
+        for (Session session : sessions) {
+            session.disconnect();
+        }
+        timer.shutdownNow();
+    }
+
+    // After close(): waits for the sessions to end; false if some were still open at the timeout
+    public boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!isFinished() && deadline - System.nanoTime() > 0) {
+            Thread.sleep(20);
+        }
+        return isFinished();
+    }
+
+    public boolean isFinished() {
+        return ended.get() == sessions.size();
+    }
+
+    @Override
+    public String toString() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        int count = sessions.size();
+        return String.format("%d sessions: %d connected, %d ended, %d reconnects; %d sent, %d received; " +
+                        "heap %d MB (~%d KB per session)", count, connected.get(), ended.get(), reconnects.sum(),
+                sent.sum(), received.sum(), used / (1024 * 1024), count == 0 ? 0 : used / 1024 / count);
+    }
+
+    // Headless: prints a summary every intervalSeconds until every session has ended or, when
+    // durationSeconds is positive, that much time has passed
+    public void report(PrintStream out, int intervalSeconds, int durationSeconds) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        while (!isFinished() && (durationSeconds <= 0 || end - System.nanoTime() > 0)) {
+            long wait = TimeUnit.SECONDS.toNanos(Math.max(1, intervalSeconds));
+            if (durationSeconds > 0) {
+                wait = Math.max(1, Math.min(wait, end - System.nanoTime()));
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+            out.println(this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+
+public interface ClientTransport {
+    void write(EncodedLine line) throws IOException;
+
+    // Several queued lines in one go; transports override this to coalesce them into one write
+    default void write(List<EncodedLine> lines) throws IOException {
+        for (EncodedLine line : lines) {
+            write(line);
+        }
+    }
+
+    // True when write() may be called from a client's own reading thread, letting the handler
+    // answer a message in place instead of handing the reply to a writer thread
+    default boolean writesInline() {
+        return false;
+    }
+
+    boolean isOpen();
+
+    // True once the connection is fully closed, pending output included; isOpen() turns false
+    // as soon as a close is asked for
+    default boolean isClosed() {
+        return !isOpen();
+    }
+
+    SocketAddress getRemoteAddress();
+
+    // Flushes what was already written, then closes
+    void close() throws IOException;
+
+    // Closes without waiting for pending output, for peers that stopped reading
+    default void abort() throws IOException {
+        close();
+    }
+}
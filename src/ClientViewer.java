@@ -0,0 +1,131 @@
+import javax.swing.*;
+import java.awt.*;
+
+// One window over all sessions of a ClientRuntime: the session list on the left, the
+// selected session's chat on the right. Only the selected session is rendered, so the window
+// costs the same for ten sessions as for thousands.
+public class ClientViewer extends JFrame {
+    private static final int LIST_TICK_MILLIS = 500;
+
+    private final ClientRuntime runtime;
+    private final SessionListModel model = new SessionListModel();
+    private final JList<ClientRuntime.Session> list = new JList<>(model);
+    private final JTextArea chat = new JTextArea();
+    private final JTextField input = new JTextField();
+    private final JLabel summary = new JLabel();
+    private final LineRenderer output = new LineRenderer(chat, 2000);
+    private ClientRuntime.Session selected;
+
+    private final class SessionListModel extends AbstractListModel<ClientRuntime.Session> {
+        private int size;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public ClientRuntime.Session getElementAt(int index) {
+            return runtime.getSessions().get(index);
+        }
+
+        // Rows are drawn on demand, so a repaint of the visible ones is all a refresh costs
+        void refresh() {
+            int old = size;
+            size = runtime.getSessions().size();
+            if (size > old) {
+                fireIntervalAdded(this, old, size - 1);
+            }
+            if (size > 0) {
+                fireContentsChanged(this, 0, size - 1);
+            }
+        }
+    }
+
+    public ClientViewer(ClientRuntime runtime) {
+        this.runtime = runtime;
+        setTitle("Client ChatBot - sessions");
+        setSize(800, 500);
+        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        Font monoFont = new Font("Monospaced", Font.PLAIN, 12);
+        list.setFont(monoFont);
+        list.setFixedCellHeight(list.getFontMetrics(monoFont).getHeight() + 2);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                select(list.getSelectedValue());
+            }
+        });
+        chat.setEditable(false);
+        chat.setFont(monoFont);
+
+        JButton sendButton = new JButton("Send");
+        sendButton.addActionListener(e -> sendMessage());
+        input.addActionListener(e -> sendMessage());
+        JButton stopButton = new JButton("Stop");
+        stopButton.addActionListener(e -> {
+            if (selected != null) {
+                selected.disconnect();
+            }
+        });
+        JPanel bottom = new JPanel(new BorderLayout(4, 0));
+        bottom.add(input, BorderLayout.CENTER);
+        JPanel buttons = new JPanel(new GridLayout(1, 2, 4, 0));
+        buttons.add(sendButton);
+        buttons.add(stopButton);
+        bottom.add(buttons, BorderLayout.EAST);
+
+        JPanel right = new JPanel(new BorderLayout(0, 4));
+        right.add(new JScrollPane(chat), BorderLayout.CENTER);
+        right.add(bottom, BorderLayout.SOUTH);
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(list), right);
+        split.setDividerLocation(200);
+
+        JPanel content = new JPanel(new BorderLayout(0, 4));
+        content.add(split, BorderLayout.CENTER);
+        content.add(summary, BorderLayout.SOUTH);
+        setContentPane(content);
+
+        new Timer(LIST_TICK_MILLIS, e -> {
+            model.refresh();
+            summary.setText(runtime.toString());
+        }).start();
+        model.refresh();
+        setVisible(true);
+        if (model.getSize() > 0) {
+            list.setSelectedIndex(0);
+        }
+    }
+
+    private void select(ClientRuntime.Session session) {
+        if (session == selected) {
+            return;
+        }
+        if (selected != null) {
+            selected.watch(null);
+        }
+        selected = session;
+        output.clear();
+        if (session != null) {
+            session.watch(output::append);
+        }
+    }
+
+    private void sendMessage() {
+        String message = input.getText().trim();
+        if (message.isEmpty() || selected == null) {
+            return;
+        }
+        if (!selected.send(message)) {
+            JOptionPane.showMessageDialog(this, "Not connected to server!", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        input.setText("");
+    }
+
+    public static void show(ClientRuntime runtime) {
+        SwingUtilities.invokeLater(() -> new ClientViewer(runtime));
+    }
+}
@@ -0,0 +1,583 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Links this server to the other nodes of a cluster (chat.cluster.*). Every node dials every
+// member it knows of and only writes to its own outbound links; inbound links are read-only
+// after the handshake, so a pair of nodes shares two one-way connections and never has to
+// settle which one to keep. Each outbound link has a writer that drains everything queued
+// into one socket write, so broadcasts, requests and replies are batched and pipelined.
+//
+// Membership rides on the heartbeat: each node lists the members it knows, so one seed is
+// enough to find the rest. A member that has not been heard from for MISSED_HEARTBEATS is
+// down until it is heard from again.
+public class ClusterNode {
+    // Client IDs are seq * ID_STRIDE + node id, so the owner of any client can be read off its ID
+    static final int ID_STRIDE = 100;
+    static final int MAX_NODES = ID_STRIDE - 1;
+    private static final int MISSED_HEARTBEATS = 3;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int BATCH_BYTES = 64 * 1024;
+    // Room kept in a reply frame for the "... N more" line, and the most fields a frame can count
+    private static final int MORE_LINE_BYTES = 64;
+    private static final int MAX_FIELDS = 0xFFFF;
+
+    // Frame: [type: 1 byte][payload length: 4 bytes][payload: field count (2), then per
+    // field its UTF-8 length (4) and bytes]
+    private static final byte HELLO = 1;       // node id, advertised address
+    private static final byte HEARTBEAT = 2;   // client count, then "id@host:port" per member
+    private static final byte BROADCAST = 3;   // text
+    static final byte KICK = 4;                // request id, target
+    static final byte LIST = 5;                // request id
+    private static final byte REPLY = 6;       // request id, lines
+    private static final byte FAILED = 7;      // request id, error message
+
+    private final ChatServer server;
+    private final int nodeId;
+    private final int port;
+    private final String advertise;
+    private final List<String> seeds;
+    private final long heartbeatMillis;
+    private final long timeoutMillis;
+    private final Map<Integer, Member> members = new ConcurrentHashMap<>();
+    // Seed address -> node it turned out to be, so known seeds are not dialled again
+    private final Map<String, Integer> seedNodes = new ConcurrentHashMap<>();
+    private final Set<String> dialling = ConcurrentHashMap.newKeySet();
+    private final Map<Long, CompletableFuture<Reply>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private ServerSocket listener;
+    private ScheduledExecutorService timer;
+    private volatile boolean running;
+
+    private final class Member {
+        final int id;
+        volatile String address;
+        final AtomicReference<Link> outbound = new AtomicReference<>();
+        volatile long lastHeardNanos;
+        volatile int clients;
+        volatile boolean up;
+
+        Member(int id, String address) {
+            this.id = id;
+            this.address = address;
+        }
+    }
+
+    // Outbound connection to one member; a virtual thread writes whatever has been queued
+    private final class Link {
+        final Socket socket;
+        final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        volatile boolean open = true;
+
+        Link(Socket socket) {
+            this.socket = socket;
+        }
+
+        void send(byte[] frame) {
+            if (open) {
+                queue.add(frame);
+            }
+        }
+
+        void run(Member member) {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream(BATCH_BYTES);
+            List<byte[]> drained = new ArrayList<>();
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (open) {
+                    byte[] first = queue.take();
+                    batch.reset();
+                    batch.write(first);
+                    drained.clear();
+                    queue.drainTo(drained, 1024);
+                    for (byte[] frame : drained) {
+                        batch.write(frame);
+                        if (batch.size() >= BATCH_BYTES) {
+                            batch.writeTo(out);
+                            batch.reset();
+                        }
+                    }
+                    batch.writeTo(out);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Dropped; the next heartbeat tick dials again
+            } finally {
+                close();
+                member.outbound.compareAndSet(this, null);
+            }
+        }
+
+        void close() {
+            open = false;
+            queue.clear();
+            // Wakes a writer blocked in take()
+            queue.add(new byte[0]);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public ClusterNode(ChatServer server, int nodeId, int port, String advertise, List<String> seeds,
+                       long heartbeatMillis, long timeoutMillis) {
+        if (nodeId < 1 || nodeId > MAX_NODES) {
+            throw new IllegalArgumentException("chat.cluster.nodeId must be 1 - " + MAX_NODES);
+        }
+        this.server = server;
+        this.nodeId = nodeId;
+        this.port = port;
+        this.advertise = advertise != null ? advertise : "localhost:" + port;
+        this.seeds = seeds;
+        this.heartbeatMillis = heartbeatMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Null when the server is not part of a cluster
+    public static ClusterNode fromConfig(ChatServer server, ServerConfig config) {
+        if (config.getClusterNodeId() <= 0) {
+            return null;
+        }
+        List<String> seeds = new ArrayList<>();
+        for (String seed : config.getClusterSeeds().split(",")) {
+            if (!seed.isBlank()) {
+                seeds.add(seed.trim());
+            }
+        }
+        return new ClusterNode(server, config.getClusterNodeId(), config.getClusterPort(),
+                config.getClusterAdvertise(), seeds, config.getClusterHeartbeatMillis(),
+                config.getClusterTimeoutMillis());
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    static int nodeOf(int clientId) {
+        return clientId % ID_STRIDE;
+    }
+
+    public void start() throws IOException {
+        listener = new ServerSocket(port);
+        running = true;
+        Thread.ofVirtual().name("ClusterAccept").start(this::acceptLoop);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ClusterHeartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::tick, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        server.log("Cluster node " + nodeId + " listening on port " + listener.getLocalPort() + " as " + advertise);
+    }
+
+    public void stop() {
+        running = false;
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException ignored) {
+        }
+        for (Member member : members.values()) {
+            Link link = member.outbound.get();
+            if (link != null) {
+                link.close();
+            }
+        }
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (CompletableFuture<Reply> request : pending.values()) {
+            request.complete(Reply.failed("node stopped"));
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = listener.accept();
+                Thread.ofVirtual().name("ClusterLink").start(() -> serveInbound(socket));
+            } catch (IOException e) {
+                if (running) {
+                    server.log("Cluster accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Handshake: the dialler says HELLO and hears HELLO back, then only the dialler writes
+    private void serveInbound(Socket socket) {
+        inbound.add(socket);
+        Member member = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readByte() != HELLO) {
+                return;
+            }
+            String[] hello = readFields(in);
+            int peer = Integer.parseInt(hello[0]);
+            socket.getOutputStream().write(frame(HELLO, String.valueOf(nodeId), advertise));
+            socket.getOutputStream().flush();
+            if (peer == nodeId) {
+                return;
+            }
+            // A peer that vanished without closing is noticed here as well as by its heartbeat
+            socket.setSoTimeout((int) (heartbeatMillis * MISSED_HEARTBEATS * 2));
+            member = members.computeIfAbsent(peer, id -> new Member(id, hello[1]));
+            member.address = hello[1];
+            heard(member);
+            if (member.outbound.get() == null) {
+                dial(member.address);
+            }
+            while (running) {
+                byte type = in.readByte();
+                handle(member, type, readFields(in));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Peer gone or spoke garbage; its heartbeat stops and it goes down
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    private void heard(Member member) {
+        member.lastHeardNanos = System.nanoTime();
+        if (!member.up) {
+            member.up = true;
+            server.log("Cluster node " + member.id + " up (" + member.address + ")");
+        }
+    }
+
+    private void handle(Member from, byte type, String[] fields) {
+        heard(from);
+        switch (type) {
+            case HEARTBEAT -> {
+                from.clients = Integer.parseInt(fields[0]);
+                for (int i = 1; i < fields.length; i++) {
+                    String entry = fields[i];
+                    int at = entry.indexOf('@');
+                    int id = Integer.parseInt(entry.substring(0, at));
+                    if (id != nodeId) {
+                        members.computeIfAbsent(id, k -> new Member(k, entry.substring(at + 1)));
+                    }
+                }
+            }
+            case BROADCAST -> server.receiveClusterBroadcast(from.id, fields[0]);
+            case KICK -> {
+                List<String> kicked;
+                try {
+                    kicked = server.kickLocal(fields[1]);
+                } catch (IllegalArgumentException e) {
+                    send(from, frame(FAILED, fields[0], String.valueOf(e.getMessage())));
+                    return;
+                }
+                reply(from, fields[0], kicked);
+            }
+            case LIST -> reply(from, fields[0], server.describeClients().lines().toList());
+            case REPLY -> {
+                CompletableFuture<Reply> request = pending.remove(Long.parseLong(fields[0]));
+                if (request != null) {
+                    request.complete(new Reply(Arrays.asList(fields).subList(1, fields.length), null));
+                }
+            }
+            case FAILED -> {
+                CompletableFuture<Reply> request = pending.remove(Long.parseLong(fields[0]));
+                if (request != null) {
+                    request.complete(Reply.failed(fields[1]));
+                }
+            }
+            default -> {
+                // Newer message types are ignored, so nodes can be upgraded one at a time
+            }
+        }
+    }
+
+    // Lines past what one frame may carry are cut off with a count, since the other node drops
+    // the link on a frame over WireFrame.MAX_PAYLOAD
+    private void reply(Member to, String requestId, List<String> lines) {
+        send(to, frame(REPLY, replyFields(requestId, lines)));
+    }
+
+    static String[] replyFields(String requestId, List<String> lines) {
+        List<String> fields = new ArrayList<>(Math.min(lines.size(), MAX_FIELDS - 1) + 1);
+        fields.add(requestId);
+        int room = WireFrame.MAX_PAYLOAD - 2 - 4 - requestId.length() - MORE_LINE_BYTES;
+        int sent = 0;
+        while (sent < lines.size() && fields.size() < MAX_FIELDS - 1) {
+            int size = 4 + lines.get(sent).getBytes(StandardCharsets.UTF_8).length;
+            if (size > room) {
+                break;
+            }
+            room -= size;
+            fields.add(lines.get(sent++));
+        }
+        if (sent < lines.size()) {
+            fields.add("... " + (lines.size() - sent) + " more");
+        }
+        return fields.toArray(String[]::new);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        long deadline = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis * MISSED_HEARTBEATS);
+        List<String> known = new ArrayList<>();
+        known.add(String.valueOf(server.getClients().size()));
+        known.add(nodeId + "@" + advertise);
+        for (Member member : members.values()) {
+            if (member.up && now - member.lastHeardNanos > deadline) {
+                member.up = false;
+                server.log("Cluster node " + member.id + " down");
+                Link link = member.outbound.get();
+                if (link != null) {
+                    link.close();
+                }
+            }
+            if (member.address != null) {
+                known.add(member.id + "@" + member.address);
+                if (member.outbound.get() == null) {
+                    dial(member.address);
+                }
+            }
+        }
+        for (String seed : seeds) {
+            Integer seedNode = seedNodes.get(seed);
+            Member member = seedNode == null ? null : members.get(seedNode);
+            if (seedNode == null || (seedNode != nodeId && (member == null || member.outbound.get() == null))) {
+                dial(seed);
+            }
+        }
+        byte[] heartbeat = frame(HEARTBEAT, known.toArray(new String[0]));
+        for (Member member : members.values()) {
+            send(member, heartbeat);
+        }
+    }
+
+    // Connects on a virtual thread; one attempt per address at a time
+    private void dial(String address) {
+        if (!running || !dialling.add(address)) {
+            return;
+        }
+        Thread.ofVirtual().name("ClusterDial").start(() -> {
+            Socket socket = new Socket();
+            try {
+                int colon = address.lastIndexOf(':');
+                socket.connect(new InetSocketAddress(address.substring(0, colon),
+                        Integer.parseInt(address.substring(colon + 1))), CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout((int) timeoutMillis);
+                socket.setTcpNoDelay(true);
+                socket.getOutputStream().write(frame(HELLO, String.valueOf(nodeId), advertise));
+                socket.getOutputStream().flush();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                if (in.readByte() != HELLO) {
+                    throw new IOException("bad handshake");
+                }
+                String[] hello = readFields(in);
+                int peer = Integer.parseInt(hello[0]);
+                seedNodes.put(address, peer);
+                if (peer == nodeId) {
+                    socket.close();
+                    return;
+                }
+                socket.setSoTimeout(0);
+                Member member = members.computeIfAbsent(peer, id -> new Member(id, hello[1]));
+                attach(member, new Link(socket));
+            } catch (IOException | RuntimeException e) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            } finally {
+                dialling.remove(address);
+            }
+        });
+    }
+
+    // A member reached under two addresses (a seed alias and its advertised one) keeps the first
+    // link; the winner's writer runs on the dialling thread
+    private void attach(Member member, Link link) {
+        Link current = member.outbound.get();
+        if ((current != null && current.open) || !member.outbound.compareAndSet(current, link)) {
+            link.close();
+            return;
+        }
+        link.run(member);
+    }
+
+    private void send(Member member, byte[] frame) {
+        Link link = member.outbound.get();
+        if (link != null) {
+            link.send(frame);
+        }
+    }
+
+    // Members heard from recently
+    public List<Integer> liveMembers() {
+        List<Integer> live = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.up && member.outbound.get() != null) {
+                live.add(member.id);
+            }
+        }
+        live.sort(null);
+        return live;
+    }
+
+    // Fire and forget; returns how many nodes it went to
+    public int broadcast(String text) {
+        byte[] frame = frame(BROADCAST, text);
+        int sent = 0;
+        for (Member member : members.values()) {
+            Link link = member.outbound.get();
+            if (member.up && link != null) {
+                link.send(frame);
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    // The node's reply; a failed one if the node refused the request, is down or does not answer in time
+    public CompletableFuture<Reply> ask(int node, byte type, String... args) {
+        Member member = members.get(node);
+        Link link = member == null ? null : member.outbound.get();
+        if (link == null || !member.up) {
+            return CompletableFuture.completedFuture(Reply.failed("node " + node + " is not reachable"));
+        }
+        long id = requestIds.incrementAndGet();
+        CompletableFuture<Reply> request = new CompletableFuture<>();
+        pending.put(id, request);
+        String[] fields = new String[args.length + 1];
+        fields[0] = String.valueOf(id);
+        System.arraycopy(args, 0, fields, 1, args.length);
+        link.send(frame(type, fields));
+        return request.completeOnTimeout(Reply.failed("node " + node + " did not answer"), timeoutMillis,
+                        TimeUnit.MILLISECONDS)
+                .whenComplete((lines, error) -> pending.remove(id));
+    }
+
+    // Asks every live member; completes with their replies by node once all have answered or timed out
+    public CompletableFuture<Map<Integer, Reply>> askAll(byte type, String... args) {
+        Map<Integer, CompletableFuture<Reply>> requests = new TreeMap<>();
+        for (int node : liveMembers()) {
+            requests.put(node, ask(node, type, args));
+        }
+        return CompletableFuture.allOf(requests.values().toArray(CompletableFuture<?>[]::new)).thenApply(done -> {
+            Map<Integer, Reply> replies = new TreeMap<>();
+            requests.forEach((node, request) -> replies.put(node, request.join()));
+            return replies;
+        });
+    }
+
+    // Lines a node answered with, or the error it (or this node, on its behalf) reported instead
+    public record Reply(List<String> lines, String error) {
+        static Reply failed(String error) {
+            return new Reply(List.of(), error);
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    // Lines for @cluster
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Node " + nodeId + " (this node, " + advertise + "): " + server.getClients().size() + " clients");
+        Map<Integer, Member> sorted = new TreeMap<>(members);
+        for (Member member : sorted.values()) {
+            lines.add("Node " + member.id + " (" + member.address + "): " + (member.up ? "up, " + member.clients +
+                    " clients" : "down") + (member.outbound.get() == null ? ", not linked" : ""));
+        }
+        return lines;
+    }
+
+    public int getRemoteClients() {
+        int clients = 0;
+        for (Member member : members.values()) {
+            if (member.up) {
+                clients += member.clients;
+            }
+        }
+        return clients;
+    }
+
+    @Override
+    public String toString() {
+        return "node " + nodeId + ", " + liveMembers().size() + "/" + members.size() + " peers up, " +
+                getRemoteClients() + " remote clients";
+    }
+
+    static byte[] frame(byte type, String... fields) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeShort(fields.length);
+            for (String field : fields) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.size() + 5);
+            DataOutputStream header = new DataOutputStream(frame);
+            header.writeByte(type);
+            header.writeInt(payload.size());
+            payload.writeTo(frame);
+            return frame.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String[] readFields(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 2 || length > WireFrame.MAX_PAYLOAD) {
+            throw new SocketException("bad cluster frame");
+        }
+        int remaining = length - 2;
+        int count = in.readUnsignedShort();
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            int size = in.readInt();
+            remaining -= 4;
+            if (size < 0 || size > remaining) {
+                throw new SocketException("bad cluster frame");
+            }
+            remaining -= size;
+            byte[] bytes = new byte[size];
+            in.readFully(bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public interface ConnectionEngine {
+    String getName();
+
+    void bind(int port) throws IOException;
+
+    // Blocks until the engine is stopped
+    void serve() throws IOException;
+
+    // Closes the listening socket only; connected clients are still served until stop()
+    void stopAccepting() throws IOException;
+
+    void stop() throws IOException;
+
+    // Rough heap + stack cost of one idle connection, used by @status
+    long estimateBytesPerConnection();
+
+    // Threads serving clients, how many are busy and how much work waits for them
+    record PoolStats(int threads, int active, int queued) {
+        static PoolStats of(ExecutorService pool) {
+            if (pool instanceof ThreadPoolExecutor tpe) {
+                return new PoolStats(tpe.getPoolSize(), tpe.getActiveCount(), tpe.getQueue().size());
+            }
+            return null;
+        }
+    }
+
+    default PoolStats getPoolStats() {
+        return null;
+    }
+
+    // Socket buffers recycled across connections, for @status
+    default BufferPool getBufferPool() {
+        return null;
+    }
+
+    static ConnectionEngine create(String name, ChatServer server) {
+        return switch (name.toLowerCase()) {
+            case "nio" -> new NioConnectionEngine(server);
+            case "virtual" -> new BlockingConnectionEngine("virtual", server,
+                    Executors.newVirtualThreadPerTaskExecutor());
+            case "thread" -> new BlockingConnectionEngine("thread", server,
+                    Executors.newCachedThreadPool());
+            default -> throw new IllegalArgumentException("Unknown connection engine: " + name);
+        };
+    }
+}
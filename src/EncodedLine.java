@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A protocol line encoded once as UTF-8, newline included, shareable between connections.
+// Its binary frame is encoded on first use and shared the same way.
+public final class EncodedLine {
+    private final String text;
+    private final byte[] bytes;
+    private final byte frameType;
+    private volatile EncodedLine frame;
+
+    private EncodedLine(String text, byte[] bytes, byte frameType) {
+        this.text = text;
+        this.bytes = bytes;
+        this.frameType = frameType;
+    }
+
+    public static EncodedLine of(String text) {
+        return of(text, WireFrame.MESSAGE);
+    }
+
+    // frameType is what the line becomes on a framed connection, e.g. WireFrame.DISCONNECT
+    public static EncodedLine of(String text, byte frameType) {
+        return new EncodedLine(text, (text + "\n").getBytes(StandardCharsets.UTF_8), frameType);
+    }
+
+    // The same message as one WireFrame; a racing first call may encode it twice, harmlessly
+    public EncodedLine framed() {
+        EncodedLine f = frame;
+        if (f == null) {
+            f = new EncodedLine(text, WireFrame.encode(frameType, text), frameType);
+            f.frame = f;
+            frame = f;
+        }
+        return f;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    // Each caller gets its own position over the shared bytes
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    // Returns the offset just past the copied bytes
+    public int copyTo(byte[] dst, int offset) {
+        System.arraycopy(bytes, 0, dst, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    public void putTo(ByteBuffer dst) {
+        dst.put(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+
+// Runs a ChatServer without a window: the log goes to stdout, @-commands are read from
+// stdin and, when chat.admin.port is set, from a loopback admin console.
+public class HeadlessServer {
+    private static final long STARTUP_TIMEOUT_MILLIS = 30_000;
+
+    // Returns once the server has stopped; false if it never started
+    public static boolean run(int port, ServerConfig config) throws InterruptedException {
+        ChatServer server = new ChatServer(port, config, new ChatServer.Listener() {
+            @Override
+            public void logAppended(String batch) {
+                System.out.print(batch);
+                System.out.flush();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server.isRunning()) {
+                server.stop();
+            }
+        }, "ServerShutdown"));
+
+        Thread serving = new Thread(server::start, "ChatServer");
+        serving.start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!server.isRunning() && serving.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        if (!server.isRunning()) {
+            serving.join();
+            server.close();
+            return false;
+        }
+        reportStartup(server);
+
+        AdminConsole admin = null;
+        if (config.getAdminPort() > 0) {
+            try {
+                admin = new AdminConsole(server, config.getAdminPort());
+                admin.start();
+                server.log("Admin console listening on localhost:" + admin.getPort());
+            } catch (IOException e) {
+                server.log("Admin console disabled: " + e.getMessage());
+            }
+        }
+        startStdinConsole(server);
+
+        serving.join();
+        if (admin != null) {
+            admin.close();
+        }
+        server.close();
+        return true;
+    }
+
+    private static void reportStartup(ChatServer server) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        server.log("Headless startup: " + server.getStartupMillis() + " ms from JVM launch, heap " +
+                heap.getUsed() / (1024 * 1024) + " MB used / " + heap.getCommitted() / (1024 * 1024) +
+                " MB committed, non-heap " + nonHeap.getUsed() / (1024 * 1024) + " MB, " +
+                ManagementFactory.getThreadMXBean().getThreadCount() + " threads");
+    }
+
+    // Daemon, so a closed or missing stdin (containers, nohup) never keeps the server up or down
+    private static void startStdinConsole(ChatServer server) {
+        Thread console = new Thread(() -> {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    server.command(line, System.out::println);
+                }
+            } catch (IOException e) {
+                server.log("Console error: " + e.getMessage());
+            }
+        }, "StdinConsole");
+        console.setDaemon(true);
+        console.start();
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hashed timer wheel for idle connections. Every connection has one Session sitting in the
+// bucket of the tick it next needs looking at; a message only stamps the session's last
+// activity, so the hot path is a single field write. When a bucket comes round, sessions
+// that saw traffic meanwhile are simply hashed into a later bucket (lazy reschedule); the
+// others get a heartbeat ping or, once the idle timeout has passed, are closed. Text
+// connections cannot answer a ping, so they have their own timeout, off by default.
+//
+// Buckets are only touched by the thread calling tick(). New sessions arrive through a queue
+// and cancelled ones are dropped when their bucket is next visited.
+public class IdleTracker {
+    // Wheel span is WHEEL_SIZE ticks; later deadlines wait out extra laps in their bucket
+    private static final int WHEEL_SIZE = 512;
+
+    public interface Target {
+        // Heartbeat due: idle for the ping interval since the last one
+        void idlePing();
+
+        // No inbound traffic for the whole idle timeout
+        void idleTimeout(long idleMillis);
+    }
+
+    public final class Session {
+        private final Target target;
+        private volatile long lastActivityNanos;
+        private volatile boolean framed;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        // Wheel thread only
+        private long dueTick;
+        private long pingedFor;
+        private Session next;
+
+        private Session(Target target, long nowNanos) {
+            this.target = target;
+            this.lastActivityNanos = nowNanos;
+            this.pingedFor = nowNanos - 1;
+        }
+
+        public void touch(long nowNanos) {
+            lastActivityNanos = nowNanos;
+        }
+
+        // The client switched to frames: it is pinged from now on, under the framed timeout
+        public void setFramed() {
+            framed = true;
+        }
+
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                active.decrement();
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final long timeoutNanos;
+    private final long textTimeoutNanos;
+    private final long pingNanos;
+    private final Session[] wheel = new Session[WHEEL_SIZE];
+    private final Queue<Session> added = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private long currentTick;
+    private final LongAdder active = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    // pingMillis 0 turns heartbeats off; a timeout of 0 never closes idle connections of that kind
+    public IdleTracker(long tickMillis, long timeoutMillis, long textTimeoutMillis, long pingMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.textTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(textTimeoutMillis);
+        this.pingNanos = TimeUnit.MILLISECONDS.toNanos(pingMillis);
+    }
+
+    // Null when neither heartbeats nor the timeout are configured
+    public static IdleTracker fromConfig(ServerConfig config) {
+        int timeout = config.getIdleTimeoutSeconds();
+        int textTimeout = config.getIdleTextTimeoutSeconds();
+        int ping = config.getIdlePingSeconds();
+        if (timeout <= 0 && textTimeout <= 0 && ping <= 0) {
+            return null;
+        }
+        return new IdleTracker(config.getIdleTickMillis(), TimeUnit.SECONDS.toMillis(Math.max(0, timeout)),
+                TimeUnit.SECONDS.toMillis(Math.max(0, textTimeout)), TimeUnit.SECONDS.toMillis(Math.max(0, ping)));
+    }
+
+    public Session register(Target target) {
+        Session session = new Session(target, System.nanoTime());
+        active.increment();
+        added.add(session);
+        return session;
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    // Advances the wheel to the present, visiting every bucket passed on the way
+    public void tick() {
+        long now = System.nanoTime();
+        Session session;
+        while ((session = added.poll()) != null) {
+            schedule(session, now);
+        }
+        long target = (now - startNanos) / tickNanos;
+        while (currentTick < target) {
+            currentTick++;
+            int index = (int) (currentTick & (WHEEL_SIZE - 1));
+            Session s = wheel[index];
+            wheel[index] = null;
+            while (s != null) {
+                Session next = s.next;
+                s.next = null;
+                if (!s.cancelled.get()) {
+                    if (s.dueTick > currentTick) {
+                        insert(s, index);
+                    } else {
+                        check(s, now);
+                    }
+                }
+                s = next;
+            }
+        }
+    }
+
+    private void check(Session s, long now) {
+        long last = s.lastActivityNanos;
+        long idle = now - last;
+        long timeout = s.framed ? timeoutNanos : textTimeoutNanos;
+        if (timeout > 0 && idle >= timeout) {
+            s.cancel();
+            timeouts.increment();
+            s.target.idleTimeout(TimeUnit.NANOSECONDS.toMillis(idle));
+            return;
+        }
+        // One ping per quiet spell; the pong is traffic and starts the next one
+        if (s.framed && pingNanos > 0 && idle >= pingNanos && s.pingedFor != last) {
+            s.pingedFor = last;
+            pings.increment();
+            s.target.idlePing();
+        }
+        schedule(s, now);
+    }
+
+    private void schedule(Session s, long now) {
+        long last = s.lastActivityNanos;
+        long due = Long.MAX_VALUE;
+        if (pingNanos > 0) {
+            // Once pinged, look again a ping interval later: the pong will have moved
+            // lastActivityNanos, and the next heartbeat is counted from there. A text
+            // connection is looked at as often, in case it has switched to frames.
+            due = s.framed && s.pingedFor != last ? last + pingNanos : now + pingNanos;
+        }
+        long timeout = s.framed ? timeoutNanos : textTimeoutNanos;
+        if (timeout > 0) {
+            due = Math.min(due, last + timeout);
+        } else if (!s.framed && timeoutNanos > 0) {
+            due = Math.min(due, now + timeoutNanos);
+        }
+        // Rounded up, and never the tick that is being processed
+        long tick = Math.max(currentTick + 1, (due - startNanos + tickNanos - 1) / tickNanos);
+        s.dueTick = tick;
+        insert(s, (int) (tick & (WHEEL_SIZE - 1)));
+    }
+
+    private void insert(Session s, int index) {
+        s.next = wheel[index];
+        wheel[index] = s;
+    }
+
+    public long getActive() {
+        return active.sum();
+    }
+
+    public long getPings() {
+        return pings.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sessions, timeout %s (text %s), ping %s, %d pings sent, %d timed out",
+                getActive(), describe(timeoutNanos), describe(textTimeoutNanos), describe(pingNanos), getPings(),
+                getTimeouts());
+    }
+
+    private static String describe(long nanos) {
+        return nanos > 0 ? TimeUnit.NANOSECONDS.toSeconds(nanos) + " s" : "off";
+    }
+}
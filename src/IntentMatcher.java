@@ -0,0 +1,254 @@
+import java.util.*;
+
+// Immutable, compiled form of the intent rules. Exact patterns live in an open-addressing
+// table, "contains" patterns in one Aho-Corasick automaton, so a message is matched in a
+// single pass over its characters without allocating, however many keywords there are.
+public class IntentMatcher {
+    // encoded is the ready-to-send reply for responses without placeholders, null otherwise.
+    // personal responses depend on the client ({id}, {address}, {name}), not just on the input.
+    public record Intent(String name, String response, EncodedLine encoded, boolean personal) {
+        public static Intent of(String name, String response) {
+            boolean templated = response.indexOf('{') >= 0;
+            boolean personal = response.contains("{id}") || response.contains("{address}") ||
+                    response.contains("{name}");
+            return new Intent(name, response, templated ? null : EncodedLine.of(response), personal);
+        }
+
+        public boolean templated() {
+            return encoded == null;
+        }
+    }
+
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    // Exact table, keys already lower case
+    private final String[] exactKeys;
+    private final Intent[] exactIntents;
+    private final int exactMask;
+
+    // Aho-Corasick automaton over lower-cased chars; node 0 is the root
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final int[] bestRule;
+    private final Intent[] containsIntents;
+
+    private final int maxLength;
+    private final Intent tooLongIntent;
+    private final Intent defaultIntent;
+
+    private IntentMatcher(Builder b) {
+        int capacity = Integer.highestOneBit(Math.max(4, b.exact.size() * 2 - 1)) << 1;
+        exactKeys = new String[capacity];
+        exactIntents = new Intent[capacity];
+        exactMask = capacity - 1;
+        for (Map.Entry<String, Intent> e : b.exact.entrySet()) {
+            int slot = e.getKey().hashCode() & exactMask;
+            while (exactKeys[slot] != null) {
+                slot = (slot + 1) & exactMask;
+            }
+            exactKeys[slot] = e.getKey();
+            exactIntents[slot] = e.getValue();
+        }
+
+        containsIntents = b.containsIntents.toArray(new Intent[0]);
+        int nodes = b.trie.size();
+        edgeChars = new char[nodes][];
+        edgeTargets = new int[nodes][];
+        fail = new int[nodes];
+        bestRule = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            TreeMap<Character, Integer> children = b.trie.get(i);
+            edgeChars[i] = new char[children.size()];
+            edgeTargets[i] = new int[children.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : children.entrySet()) {
+                edgeChars[i][k] = e.getKey();
+                edgeTargets[i][k] = e.getValue();
+                k++;
+            }
+            bestRule[i] = b.terminalRule.get(i);
+        }
+
+        // Breadth-first so every fail target is final before its dependants
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            bestRule[node] = Math.min(bestRule[node], bestRule[fail[node]]);
+            for (int k = 0; k < edgeChars[node].length; k++) {
+                char c = edgeChars[node][k];
+                int child = edgeTargets[node][k];
+                int f = fail[node];
+                int next;
+                while ((next = step(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next >= 0 ? next : 0;
+                queue.add(child);
+            }
+        }
+
+        maxLength = b.maxLength;
+        tooLongIntent = b.tooLongIntent;
+        defaultIntent = b.defaultIntent;
+    }
+
+    private int step(int node, char c) {
+        int k = Arrays.binarySearch(edgeChars[node], c);
+        return k >= 0 ? edgeTargets[node][k] : -1;
+    }
+
+    public Intent match(CharSequence input) {
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        Intent exact = lookupExact(input, start, end);
+        if (exact != null) {
+            return exact;
+        }
+
+        int best = NO_RULE;
+        int node = 0;
+        for (int i = start; i < end && best != 0; i++) {
+            char c = Character.toLowerCase(input.charAt(i));
+            int next;
+            while ((next = step(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = Math.max(next, 0);
+            best = Math.min(best, bestRule[node]);
+        }
+        if (best != NO_RULE) {
+            return containsIntents[best];
+        }
+
+        if (tooLongIntent != null && end - start > maxLength) {
+            return tooLongIntent;
+        }
+        return defaultIntent;
+    }
+
+    // True for the default rule's intent: no rule had an answer for the message
+    public boolean isFallback(Intent intent) {
+        return intent == defaultIntent;
+    }
+
+    private Intent lookupExact(CharSequence input, int start, int end) {
+        // Same hash as String.hashCode() of the lower-cased, trimmed input
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(input.charAt(i));
+        }
+        int slot = h & exactMask;
+        String key;
+        while ((key = exactKeys[slot]) != null) {
+            if (key.length() == end - start && regionEquals(key, input, start)) {
+                return exactIntents[slot];
+            }
+            slot = (slot + 1) & exactMask;
+        }
+        return null;
+    }
+
+    private static boolean regionEquals(String key, CharSequence input, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != Character.toLowerCase(input.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        int exact = 0;
+        for (String key : exactKeys) {
+            if (key != null) {
+                exact++;
+            }
+        }
+        return exact + containsIntents.length;
+    }
+
+    public static class Builder {
+        private final Map<String, Intent> exact = new HashMap<>();
+        private final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        private final List<Integer> terminalRule = new ArrayList<>();
+        private final List<Intent> containsIntents = new ArrayList<>();
+        private int maxLength = Integer.MAX_VALUE;
+        private Intent tooLongIntent;
+        private Intent defaultIntent;
+
+        public Builder() {
+            newNode();
+        }
+
+        private int newNode() {
+            trie.add(new TreeMap<>());
+            terminalRule.add(NO_RULE);
+            return trie.size() - 1;
+        }
+
+        // Earlier rules win, as in the rule file
+        public Builder exact(Intent intent, Collection<String> patterns) {
+            for (String p : patterns) {
+                exact.putIfAbsent(p.toLowerCase().trim(), intent);
+            }
+            return this;
+        }
+
+        // Earlier rules have higher priority, regardless of where in the message they match
+        public Builder contains(Intent intent, Collection<String> patterns) {
+            int rule = containsIntents.size();
+            containsIntents.add(intent);
+            for (String p : patterns) {
+                String keyword = p.toLowerCase();
+                if (keyword.isEmpty()) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    Integer child = trie.get(node).get(keyword.charAt(i));
+                    if (child == null) {
+                        child = newNode();
+                        trie.get(node).put(keyword.charAt(i), child);
+                    }
+                    node = child;
+                }
+                terminalRule.set(node, Math.min(terminalRule.get(node), rule));
+            }
+            return this;
+        }
+
+        public Builder longer(Intent intent, int length) {
+            if (tooLongIntent == null) {
+                tooLongIntent = intent;
+                maxLength = length;
+            }
+            return this;
+        }
+
+        public Builder fallback(Intent intent) {
+            if (defaultIntent == null) {
+                defaultIntent = intent;
+            }
+            return this;
+        }
+
+        public IntentMatcher build() {
+            if (defaultIntent == null) {
+                throw new IllegalStateException("Intent rules need a default rule");
+            }
+            return new IntentMatcher(this);
+        }
+    }
+}
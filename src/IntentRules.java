@@ -0,0 +1,108 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Loads intents.txt (from chat.intents.file, or the copy bundled next to the classes)
+// and swaps in a freshly compiled matcher whenever the file changes
+public class IntentRules {
+    private static final String BUNDLED = "/intents.txt";
+
+    private final Path file;
+    private volatile IntentMatcher matcher;
+    private long loadedModified;
+
+    public IntentRules(Path file) throws IOException {
+        this.file = file;
+        reload();
+    }
+
+    public static IntentRules fromConfig(ServerConfig config) throws IOException {
+        String file = config.getIntentsFile();
+        return new IntentRules(file == null ? null : Path.of(file));
+    }
+
+    public IntentMatcher current() {
+        return matcher;
+    }
+
+    public boolean isReloadable() {
+        return file != null;
+    }
+
+    public synchronized boolean reloadIfChanged() throws IOException {
+        if (file == null || Files.getLastModifiedTime(file).toMillis() == loadedModified) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    // Keeps the previous rules if the file cannot be parsed
+    public synchronized void reload() throws IOException {
+        if (file == null) {
+            try (InputStream in = IntentRules.class.getResourceAsStream(BUNDLED)) {
+                if (in == null) {
+                    throw new FileNotFoundException("intents.txt not found on the classpath");
+                }
+                matcher = parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            }
+            return;
+        }
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            matcher = parse(reader);
+        }
+        loadedModified = modified;
+    }
+
+    static IntentMatcher parse(BufferedReader reader) throws IOException {
+        IntentMatcher.Builder builder = new IntentMatcher.Builder();
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] cols = line.split("\\|", 4);
+            if (cols.length < 4) {
+                throw new IOException("intents line " + lineNo + ": expected intent | kind | patterns | response");
+            }
+            String response = unescape(cols[3].trim());
+            IntentMatcher.Intent intent = IntentMatcher.Intent.of(cols[0].trim(), response);
+            List<String> patterns = new ArrayList<>();
+            for (String p : cols[2].split(",")) {
+                if (!p.isBlank()) {
+                    patterns.add(p.trim());
+                }
+            }
+
+            switch (cols[1].trim().toLowerCase()) {
+                case "exact" -> builder.exact(intent, patterns);
+                case "contains" -> builder.contains(intent, patterns);
+                case "longer" -> {
+                    try {
+                        builder.longer(intent, Integer.parseInt(cols[2].trim()));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("intents line " + lineNo + ": 'longer' needs a length");
+                    }
+                }
+                case "default" -> builder.fallback(intent);
+                default -> throw new IOException("intents line " + lineNo + ": unknown kind '" + cols[1].trim() + "'");
+            }
+        }
+        try {
+            return builder.build();
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static String unescape(String s) {
+        return s.replace("\\n", "\n");
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear latency histogram in the spirit of HdrHistogram: exact below 128 µs, then
+// 64 sub-buckets per power of two, so any recorded value is reported within ~1.6%.
+// Buckets are LongAdders, as in ServerMetrics.Histogram, so every thread records into the
+// same one; bucket adders are only created once a value lands in them.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int index = indexOf(micros);
+        LongAdder bucket = counts.get(index);
+        if (bucket == null) {
+            counts.compareAndSet(index, null, new LongAdder());
+            bucket = counts.get(index);
+        }
+        bucket.increment();
+        total.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double meanMillis() {
+        long n = total.sum();
+        return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100). Read once recording has
+    // stopped; while it goes on the answer is only approximate.
+    public double percentileMillis(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder bucket = counts.get(i);
+            snapshot[i] = bucket == null ? 0 : bucket.sum();
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long max = maxMicros.get();
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max) / 1000.0;
+            }
+        }
+        return max / 1000.0;
+    }
+
+    // "p50 1.23  p99 4.56  p99.9 7.89  max 12.34 ms (n=1000)"
+    public String summary() {
+        return String.format("p50 %.2f  p99 %.2f  p99.9 %.2f  max %.2f ms (n=%d)",
+                percentileMillis(50), percentileMillis(99), percentileMillis(99.9), maxMillis(), count());
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Shift so the value falls in [HALF, SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((micros >> shift) - HALF);
+    }
+
+    static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,271 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Splits a byte stream into UTF-8 lines ending in "\n" or "\r\n". A partial last line
+// is kept until the rest of it arrives. A WireFrame.MARKER line switches the rest of the
+// stream, starting with the very next byte, to length-prefixed frames. Text lines are held
+// to the frame payload limit as well; a longer one fails the stream like a bad frame.
+public class LineDecoder {
+    // Handed to the consumer by identity, never as decoded text
+    public static final String NEGOTIATED = new String(WireFrame.MARKER);
+    public static final String PEER_DISCONNECT = new String("");
+    public static final String INVALID_FRAME = new String("");
+    // Heartbeat control frames
+    public static final String PING = new String(WireFrame.PING);
+    public static final String PONG = new String(WireFrame.PONG);
+
+    // Receives a view that is refilled for the next line; copy it to keep it
+    public interface LineSink {
+        void accept(CharSequence line);
+    }
+
+    private static final int INITIAL_LINE_BYTES = 128;
+    // Room for a line of MAX_PAYLOAD bytes and its "\r"
+    private static final int MAX_LINE_BYTES = WireFrame.MAX_PAYLOAD + 1;
+    // Initial capacity() of a decoder: line bytes plus the view's chars
+    static final int INITIAL_FOOTPRINT = INITIAL_LINE_BYTES * 3;
+
+    private final boolean markerFirstLineOnly;
+    private byte[] line = new byte[INITIAL_LINE_BYTES];
+    private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+    private int lineLength;
+    private boolean negotiable = true;
+    private boolean framed;
+    private boolean failed;
+
+    // Output of the decode call in progress; exactly one is set
+    private Consumer<String> strings;
+    private LineSink views;
+    private final CharView view = new CharView(INITIAL_LINE_BYTES);
+    private CharBuffer viewChars;
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // Servers only honour the marker as a client's first line
+    public LineDecoder() {
+        this(true);
+    }
+
+    // Clients see it after the welcome lines, so they accept it anywhere
+    public LineDecoder(boolean markerFirstLineOnly) {
+        this.markerFirstLineOnly = markerFirstLineOnly;
+    }
+
+    public boolean isFramed() {
+        return framed;
+    }
+
+    // Consumes everything remaining in the buffer, one String per line
+    public void decode(ByteBuffer in, Consumer<String> out) {
+        strings = out;
+        try {
+            run(in);
+        } finally {
+            strings = null;
+        }
+    }
+
+    // Same, without allocating: every line is decoded into one reused CharView
+    public void decodeInPlace(ByteBuffer in, LineSink out) {
+        views = out;
+        try {
+            run(in);
+        } finally {
+            views = null;
+        }
+    }
+
+    private void run(ByteBuffer in) {
+        while (in.hasRemaining() && !framed && !failed) {
+            byte b = in.get();
+            if (b == '\n') {
+                int end = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                if (negotiable && isMarker(end)) {
+                    framed = true;
+                    signal(NEGOTIATED);
+                } else {
+                    emit(lineBuffer, 0, end);
+                }
+                negotiable &= !markerFirstLineOnly;
+            } else {
+                if (lineLength == line.length) {
+                    if (lineLength == MAX_LINE_BYTES) {
+                        fail(in);
+                        return;
+                    }
+                    grow(Math.min(line.length * 2, MAX_LINE_BYTES));
+                }
+                line[lineLength++] = b;
+            }
+        }
+        if (failed) {
+            in.position(in.limit());
+        } else if (framed) {
+            decodeFrames(in);
+        }
+    }
+
+    private boolean isMarker(int length) {
+        if (length != WireFrame.MARKER.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != WireFrame.MARKER.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Frames that are whole in the buffer are decoded where they lie; only a frame split
+    // across reads is copied, into the same buffer text lines use
+    private void decodeFrames(ByteBuffer in) {
+        while (in.hasRemaining() && !failed) {
+            if (lineLength == 0 && in.remaining() >= WireFrame.HEADER_BYTES) {
+                int start = in.position();
+                byte type = in.get(start);
+                int length = in.getInt(start + 1);
+                if (!valid(type, length, in)) {
+                    return;
+                }
+                if (in.remaining() >= WireFrame.HEADER_BYTES + length) {
+                    in.position(start + WireFrame.HEADER_BYTES + length);
+                    emitFrame(type, in, start + WireFrame.HEADER_BYTES, length);
+                    continue;
+                }
+            }
+
+            if (lineLength < WireFrame.HEADER_BYTES) {
+                int take = Math.min(WireFrame.HEADER_BYTES - lineLength, in.remaining());
+                in.get(line, lineLength, take);
+                lineLength += take;
+                if (lineLength < WireFrame.HEADER_BYTES) {
+                    return;
+                }
+            }
+            int length = lineBuffer.getInt(1);
+            if (!valid(line[0], length, in)) {
+                return;
+            }
+            int need = WireFrame.HEADER_BYTES + length;
+            if (line.length < need) {
+                grow(Math.max(need, line.length * 2));
+            }
+            int take = Math.min(need - lineLength, in.remaining());
+            in.get(line, lineLength, take);
+            lineLength += take;
+            if (lineLength == need) {
+                lineLength = 0;
+                emitFrame(line[0], lineBuffer, WireFrame.HEADER_BYTES, length);
+            }
+        }
+    }
+
+    // A bad header poisons the rest of the stream: there is no way to find the next frame
+    private boolean valid(byte type, int length, ByteBuffer in) {
+        if (WireFrame.isKnownType(type) && length >= 0 && length <= WireFrame.MAX_PAYLOAD) {
+            return true;
+        }
+        fail(in);
+        return false;
+    }
+
+    private void fail(ByteBuffer in) {
+        failed = true;
+        in.position(in.limit());
+        signal(INVALID_FRAME);
+    }
+
+    private void emitFrame(byte type, ByteBuffer src, int offset, int length) {
+        switch (type) {
+            case WireFrame.MESSAGE -> emit(src, offset, length);
+            case WireFrame.DISCONNECT -> signal(PEER_DISCONNECT);
+            default -> {
+                // Unknown control payloads are ignored, so either side can add new ones
+                if (isControl(src, offset, length, WireFrame.PING)) {
+                    signal(PING);
+                } else if (isControl(src, offset, length, WireFrame.PONG)) {
+                    signal(PONG);
+                }
+            }
+        }
+    }
+
+    private static boolean isControl(ByteBuffer src, int offset, int length, String payload) {
+        if (length != payload.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (src.get(offset + i) != payload.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void signal(String sentinel) {
+        if (strings != null) {
+            strings.accept(sentinel);
+        } else {
+            views.accept(sentinel);
+        }
+    }
+
+    private void emit(ByteBuffer src, int offset, int length) {
+        if (views != null) {
+            views.accept(fill(src, offset, length));
+        } else if (src.hasArray()) {
+            strings.accept(new String(src.array(), src.arrayOffset() + offset, length, StandardCharsets.UTF_8));
+        } else {
+            strings.accept(fill(src, offset, length).toString());
+        }
+    }
+
+    // ASCII is widened in a single pass; anything else goes through the reused UTF-8 decoder
+    private CharView fill(ByteBuffer src, int offset, int length) {
+        char[] chars = view.buffer(length);
+        for (int i = 0; i < length; i++) {
+            byte b = src.get(offset + i);
+            if (b < 0) {
+                return fillUtf8(src, offset, length);
+            }
+            chars[i] = (char) b;
+        }
+        view.set(length);
+        return view;
+    }
+
+    private CharView fillUtf8(ByteBuffer src, int offset, int length) {
+        char[] chars = view.buffer(length);
+        if (viewChars == null || viewChars.array() != chars) {
+            viewChars = CharBuffer.wrap(chars);
+        }
+        viewChars.clear();
+        int position = src.position();
+        int limit = src.limit();
+        src.limit(offset + length).position(offset);
+        utf8.reset();
+        utf8.decode(src, viewChars, true);
+        utf8.flush(viewChars);
+        src.limit(limit).position(position);
+        view.set(viewChars.position());
+        return view;
+    }
+
+    private void grow(int capacity) {
+        line = Arrays.copyOf(line, capacity);
+        lineBuffer = ByteBuffer.wrap(line);
+    }
+
+    // Bytes held by the line and view buffers
+    public int capacity() {
+        return line.length + 2 * view.capacity();
+    }
+}
@@ -0,0 +1,90 @@
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Appends lines to a JTextArea from any thread. Lines are collected and added to the
+// document once per frame, so a flood of messages costs one insert and one repaint per frame
+// instead of one per line. Only the last maxLines are kept, both in the text area and in the
+// pending buffer: lines that would be trimmed right away are never inserted.
+public class LineRenderer {
+    private static final int FRAME_MILLIS = 16;
+
+    private final JTextArea area;
+    private final int maxLines;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private long skipped;
+    private final Timer timer;
+
+    public LineRenderer(JTextArea area, int maxLines) {
+        this.area = area;
+        this.maxLines = Math.max(1, maxLines);
+        this.timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.start();
+    }
+
+    public void append(String line) {
+        lock.lock();
+        try {
+            if (pending.size() == maxLines) {
+                pending.removeFirst();
+                skipped++;
+            }
+            pending.addLast(line);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        StringBuilder batch;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new StringBuilder();
+            if (skipped > 0) {
+                batch.append("... ").append(skipped).append(" baris dilewati ...\n");
+                skipped = 0;
+            }
+            for (String line : pending) {
+                batch.append(line).append('\n');
+            }
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        Document doc = area.getDocument();
+        try {
+            doc.insertString(doc.getLength(), batch.toString(), null);
+            int excess = area.getLineCount() - 1 - maxLines;
+            if (excess > 0) {
+                doc.remove(0, area.getLineStartOffset(excess));
+            }
+        } catch (BadLocationException e) {
+            // Document replaced under us; the next batch starts fresh
+        }
+        // Auto-scroll to bottom
+        area.setCaretPosition(doc.getLength());
+    }
+
+    // Drops pending lines and empties the text area; call on the event thread
+    public void clear() {
+        lock.lock();
+        try {
+            pending.clear();
+            skipped = 0;
+        } finally {
+            lock.unlock();
+        }
+        area.setText("");
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Headless load generator speaking the plain line protocol. Each simulated client runs on
+// its own virtual thread, sends one message from the mix, waits for the reply and repeats;
+// "selamat tinggal" ends the session and the client reconnects.
+//
+//   java -Dload.clients=1000 -Dload.seconds=30 LoadGenerator localhost 5000
+//
+// Start the server with -Dchat.pacing=none (otherwise every reply carries the simulated typing
+// delay) and a chat.maxClients above load.clients.
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "halo:40,help:10,unknown:20,long:20,bye:10";
+    private static final Map<String, String> MESSAGES = Map.of(
+            "halo", "halo",
+            "help", "help",
+            "unknown", "apa itu load test",
+            "long", "ini adalah pesan yang sengaja dibuat panjang untuk menguji jalur pesan panjang pada server, "
+                    + "lebih dari seratus karakter sehingga aturan longer yang dipakai",
+            "bye", "selamat tinggal");
+
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final long durationNanos;
+    private final long rampNanos;
+    private final long thinkMillis;
+    private final int timeoutMillis;
+    private final List<MixEntry> mix;
+    private final int totalWeight;
+    // Shared by every session, so memory does not grow with load.clients
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> byMessage = new LinkedHashMap<>();
+    private volatile boolean stopping;
+
+    private record MixEntry(String name, String message, int weight) {}
+
+    public LoadGenerator(String host, int port, ServerConfig options) {
+        this.host = host;
+        this.port = port;
+        this.clients = options.getInt("load.clients", 100);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(options.getInt("load.seconds", 10));
+        this.rampNanos = TimeUnit.MILLISECONDS.toNanos(options.getInt("load.rampMs", 1000));
+        this.thinkMillis = options.getInt("load.thinkMs", 0);
+        this.timeoutMillis = options.getInt("load.timeoutMs", 10000);
+        this.mix = parseMix(options.getString("load.mix", DEFAULT_MIX));
+        this.totalWeight = mix.stream().mapToInt(MixEntry::weight).sum();
+        for (MixEntry entry : mix) {
+            byMessage.putIfAbsent(entry.name(), new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        LoadGenerator generator = new LoadGenerator(host, port, ServerConfig.fromSystemProperties());
+        generator.run(System.out);
+    }
+
+    // "halo:40,help:10,bye:5"; names other than the built-in ones are sent as-is
+    static List<MixEntry> parseMix(String spec) {
+        List<MixEntry> entries = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int colon = part.lastIndexOf(':');
+            String name = (colon > 0 ? part.substring(0, colon) : part).trim();
+            int weight = colon > 0 ? Integer.parseInt(part.substring(colon + 1).trim()) : 1;
+            if (weight > 0) {
+                entries.add(new MixEntry(name, MESSAGES.getOrDefault(name, name), weight));
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("load.mix has no entries with a positive weight");
+        }
+        return entries;
+    }
+
+    public void run(PrintStream report) throws InterruptedException {
+        report.printf("Load test against %s:%d: %d clients, %d s, mix %s%n", host, port, clients,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), mix.stream()
+                        .map(e -> e.name() + ":" + e.weight()).reduce((a, b) -> a + "," + b).orElse(""));
+
+        List<Session> sessions = new ArrayList<>(clients);
+        List<Thread> threads = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Session session = new Session(start + rampNanos * i / clients);
+            sessions.add(session);
+            threads.add(Thread.ofVirtual().name("load-" + i).start(session));
+        }
+
+        long end = start + rampNanos + durationNanos;
+        long remaining;
+        while ((remaining = end - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.SECONDS.toNanos(5)));
+            if (end - System.nanoTime() > 0) {
+                report.printf("  ... %d messages so far%n", sessions.stream().mapToLong(s -> s.messages).sum());
+            }
+        }
+        stopping = true;
+        for (Session session : sessions) {
+            session.abort();
+        }
+        for (Thread thread : threads) {
+            thread.join(timeoutMillis);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long messages = 0;
+        long opened = 0;
+        long rejected = 0;
+        long failed = 0;
+        long errors = 0;
+        for (Session s : sessions) {
+            messages += s.messages;
+            opened += s.opened;
+            rejected += s.rejected;
+            failed += s.failed;
+            errors += s.errors;
+        }
+
+        double seconds = Math.max(1, elapsed) / 1e9;
+        report.printf("Connections: %d opened, %d rejected (server full), %d failed%n", opened, rejected, failed);
+        report.println("Connect + welcome: " + connect.summary());
+        report.printf("Messages: %d in %.1f s (%.1f/s), %d errors%n", messages, seconds, messages / seconds, errors);
+        report.println("Round trip: " + roundTrip.summary());
+        for (Map.Entry<String, LatencyHistogram> e : byMessage.entrySet()) {
+            if (e.getValue().count() > 0) {
+                report.printf("  %-10s %s%n", e.getKey(), e.getValue().summary());
+            }
+        }
+        // One line per run, easy to grep and compare between commits
+        report.printf(Locale.ROOT, "RESULT clients=%d msgs_per_sec=%.1f p50_ms=%.3f p99_ms=%.3f p999_ms=%.3f "
+                        + "connect_p99_ms=%.3f errors=%d rejected=%d failed=%d%n",
+                clients, messages / seconds, roundTrip.percentileMillis(50), roundTrip.percentileMillis(99),
+                roundTrip.percentileMillis(99.9), connect.percentileMillis(99), errors, rejected, failed);
+    }
+
+    private MixEntry pick() {
+        int r = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (MixEntry entry : mix) {
+            r -= entry.weight();
+            if (r < 0) {
+                return entry;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    // One simulated client; latencies go to the shared histograms, and its counters are only
+    // read after its thread has been joined
+    private class Session implements Runnable {
+        private final long startAt;
+        private volatile long messages;
+        private long opened;
+        private long rejected;
+        private long failed;
+        private long errors;
+        private volatile Socket socket;
+
+        Session(long startAt) {
+            this.startAt = startAt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long wait = startAt - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                while (!stopping) {
+                    try {
+                        converse();
+                    } catch (IOException e) {
+                        if (!stopping) {
+                            errors++;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // One connection, from connect to "selamat tinggal" or the end of the run
+        private void converse() throws IOException, InterruptedException {
+            long t0 = System.nanoTime();
+            try (Socket s = new Socket()) {
+                socket = s;
+                if (stopping) {
+                    return;
+                }
+                try {
+                    s.connect(new InetSocketAddress(host, port), timeoutMillis);
+                } catch (IOException e) {
+                    failed++;
+                    throw e;
+                }
+                s.setSoTimeout(timeoutMillis);
+                s.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+
+                String first = in.readLine();
+                if (first == null || first.startsWith("Server full")) {
+                    rejected++;
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    return;
+                }
+                in.readLine();
+                connect.recordNanos(System.nanoTime() - t0);
+                opened++;
+
+                while (!stopping) {
+                    MixEntry entry = pick();
+                    long sent = System.nanoTime();
+                    out.write(entry.message());
+                    out.write('\n');
+                    out.flush();
+                    if (!awaitReply(in)) {
+                        throw new EOFException("server closed the connection");
+                    }
+                    long elapsed = System.nanoTime() - sent;
+                    if (stopping) {
+                        return;
+                    }
+                    byMessage.get(entry.name()).recordNanos(elapsed);
+                    roundTrip.recordNanos(elapsed);
+                    messages++;
+                    if (entry.message().equalsIgnoreCase("selamat tinggal")) {
+                        drainUntilClosed(in);
+                        return;
+                    }
+                    if (thinkMillis > 0) {
+                        TimeUnit.MILLISECONDS.sleep(thinkMillis);
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                throw new IOException("timed out waiting for the server", e);
+            } finally {
+                socket = null;
+            }
+        }
+
+        // A reply is written in one piece, so its extra lines (e.g. help) are already buffered
+        private boolean awaitReply(BufferedReader in) throws IOException {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null || line.equals("__DISCONNECTED__")) {
+                    return false;
+                }
+            } while (line.startsWith("[SERVER"));
+            while (in.ready()) {
+                in.readLine();
+            }
+            return true;
+        }
+
+        private void drainUntilClosed(BufferedReader in) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("__DISCONNECTED__")) {
+                // Late broadcast lines
+            }
+        }
+
+        void abort() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bounded multi-producer / single-consumer ring of log events. Producers never block:
+// when the ring is full the event is counted as dropped. One consumer thread formats
+// everything published since the last tick and hands it to the sink as a single string.
+//
+// Slots are allocated once and refilled, so publishing allocates nothing: a message is
+// either a String that is already there or copied into the slot's own StringBuilder.
+public class LogPipeline {
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    // A slot's builder is replaced once a very long message has grown it past this
+    private static final int SLOT_TEXT_LIMIT = 1024;
+
+    private static final class Slot {
+        // Sequence number + 1 of the event in the slot, written last by the producer
+        volatile long published;
+        long timeMillis;
+        String message;
+        StringBuilder text = new StringBuilder(64);
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    private final Consumer<String> sink;
+    private final ScheduledExecutorService consumer;
+
+    // Consumer thread only
+    private final StringBuilder batch = new StringBuilder();
+    private long cachedSecond = -1;
+    private String cachedStamp;
+
+    public LogPipeline(int capacity, long flushIntervalMillis, Consumer<String> sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.sink = sink;
+        this.consumer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LogPipeline");
+            t.setDaemon(true);
+            return t;
+        });
+        consumer.scheduleWithFixedDelay(this::drain, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean publish(String message) {
+        long t = claim();
+        if (t < 0) {
+            return false;
+        }
+        Slot slot = slots[(int) (t & mask)];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.message = message;
+        slot.published = t + 1;
+        return true;
+    }
+
+    // prefix + number + infix + text, assembled in the slot rather than as a new String
+    public boolean publish(String prefix, int number, String infix, CharSequence text) {
+        long t = claim();
+        if (t < 0) {
+            return false;
+        }
+        Slot slot = slots[(int) (t & mask)];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.message = null;
+        if (slot.text.capacity() > SLOT_TEXT_LIMIT) {
+            slot.text = new StringBuilder(64);
+        }
+        slot.text.setLength(0);
+        slot.text.append(prefix).append(number).append(infix).append(text);
+        slot.published = t + 1;
+        return true;
+    }
+
+    // Sequence number of a free slot, or -1 when the ring is full
+    private long claim() {
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= slots.length) {
+                dropped.increment();
+                return -1;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        return t;
+    }
+
+    private void drain() {
+        long h = head;
+        long limit = h + slots.length;
+        Slot slot;
+        // A claimed slot that is not published yet is still being written; pick it up next tick
+        while (h < limit && (slot = slots[(int) (h & mask)]).published == h + 1) {
+            batch.append('[').append(stamp(slot.timeMillis)).append("] ");
+            if (slot.message != null) {
+                batch.append(slot.message);
+                slot.message = null;
+            } else {
+                batch.append(slot.text);
+            }
+            batch.append('\n');
+            h++;
+        }
+        head = h;
+
+        if (batch.length() > 0) {
+            String text = batch.toString();
+            batch.setLength(0);
+            try {
+                sink.accept(text);
+            } catch (RuntimeException e) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private String stamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedStamp = TIMESTAMP.format(Instant.ofEpochMilli(millis));
+        }
+        return cachedStamp;
+    }
+
+    public long getQueueDepth() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Hands whatever is still buffered to the sink before the consumer stops
+    public void shutdown() {
+        consumer.execute(this::drain);
+        consumer.shutdown();
+        try {
+            consumer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Single selector thread for all sockets; decoded lines are handed to a worker pool,
+// processed strictly in order per connection
+public class NioConnectionEngine implements ConnectionEngine {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Outbound writes up to this size are copied into pooled direct buffers
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int POOLED_WRITE_BUFFERS = 256;
+    // Unflushed bytes per connection before writers wait for the selector to catch up
+    private static final int OUTBOUND_HIGH_WATER = 64 * 1024;
+    private static final String END_OF_STREAM = new String("");
+
+    private final ChatServer server;
+    private final ExecutorService workers =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+    private final BufferPool writeBuffers = new BufferPool(WRITE_BUFFER_SIZE, POOLED_WRITE_BUFFERS, true);
+    // Selector thread only. Every read is decoded before the next one, so one direct buffer
+    // serves all connections; partial lines are kept by each connection's decoder.
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public NioConnectionEngine(ChatServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public String getName() {
+        return "nio";
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+
+    @Override
+    public void serve() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+                NioConnection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    pending.flush();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        NioConnection conn = (NioConnection) key.attachment();
+                        if (key.isReadable()) {
+                            conn.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            conn.flush();
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            connections.clear();
+            selector.close();
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+        } catch (IOException e) {
+            if (running) {
+                server.log("Connection Error: " + e.getMessage());
+            }
+            return;
+        }
+
+        try {
+            channel.configureBlocking(false);
+            // A non-blocking write of one short line; a peer that is not reading just loses it
+            if (!server.admitConnection(ClientRegistry.addressOf(channel.getRemoteAddress()))) {
+                channel.write(ChatServer.RATE_LIMITED_MESSAGE.buffer());
+                channel.close();
+                return;
+            }
+            if (!server.hasCapacity()) {
+                server.getMetrics().rejectedFull.increment();
+                server.log("Server reached maximum clients limit. " +
+                        "Rejecting connection from: " + channel.getRemoteAddress());
+                channel.write(ChatServer.SERVER_FULL_MESSAGE.buffer());
+                channel.close();
+                return;
+            }
+
+            server.getMetrics().accepted.increment();
+            server.enableKeepAlive(channel.socket());
+            server.log("Client connected : " + channel.getRemoteAddress());
+            NioConnection conn = new NioConnection(channel);
+            conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+            connections.add(conn);
+            conn.handler = new ClientHandler(conn, server);
+            server.addClient(conn.handler);
+            conn.handler.start();
+        } catch (IOException e) {
+            server.log("Connection Error: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // The channel leaves the selector on its next select; open connections keep being served
+    @Override
+    public void stopAccepting() throws IOException {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    @Override
+    public void stop() throws IOException {
+        running = false;
+        workers.shutdownNow();
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public long estimateBytesPerConnection() {
+        long total = 0;
+        int count = 0;
+        for (NioConnection conn : connections) {
+            total += conn.footprint();
+            count++;
+        }
+        return count == 0 ? LineDecoder.INITIAL_FOOTPRINT + 64 : total / count;
+    }
+
+    @Override
+    public BufferPool getBufferPool() {
+        return writeBuffers;
+    }
+
+    @Override
+    public PoolStats getPoolStats() {
+        return PoolStats.of(workers);
+    }
+
+    private class NioConnection implements ClientTransport {
+        private final SocketChannel channel;
+        private final SocketAddress remoteAddress;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final Queue<String> inbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final Condition flushed = flushLock.newCondition();
+        private volatile boolean closing;
+        private volatile boolean aborted;
+        private final LineDecoder decoder = new LineDecoder();
+        private final Consumer<String> dispatcher = this::dispatch;
+        private SelectionKey key;
+        private ClientHandler handler;
+
+        NioConnection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remoteAddress = channel.getRemoteAddress();
+        }
+
+        // Selector thread only
+        void read() {
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                if (handler.isConnected()) {
+                    server.log("Client " + handler.getClientID() + " connection error: " + e.getMessage());
+                }
+                n = -1;
+            }
+            if (n < 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                dispatch(END_OF_STREAM);
+                return;
+            }
+
+            server.getMetrics().bytesIn.add(n);
+            readBuffer.flip();
+            try {
+                // Lines become Strings here: they are handled later, on a worker thread
+                decoder.decode(readBuffer, dispatcher);
+            } finally {
+                readBuffer.clear();
+            }
+        }
+
+        private void dispatch(String received) {
+            inbound.add(received);
+            if (draining.compareAndSet(false, true)) {
+                workers.execute(this::drainInbound);
+            }
+        }
+
+        private void drainInbound() {
+            do {
+                String received;
+                while ((received = inbound.poll()) != null) {
+                    if (received == END_OF_STREAM || !handler.isConnected()) {
+                        inbound.clear();
+                        handler.closeConnection();
+                        break;
+                    }
+                    try {
+                        if (!handler.handleLine(received)) {
+                            inbound.clear();
+                            handler.closeConnection();
+                        }
+                    } catch (Exception e) {
+                        server.log("Unexpected error with client " + handler.getClientID() + ": " + e.getMessage());
+                        handler.closeConnection();
+                    }
+                }
+                draining.set(false);
+            } while (!inbound.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        @Override
+        public void write(EncodedLine text) throws IOException {
+            if (text.length() > WRITE_BUFFER_SIZE) {
+                enqueue(text.buffer());
+                return;
+            }
+            ByteBuffer buf = writeBuffers.acquire();
+            text.putTo(buf);
+            enqueue(buf.flip());
+        }
+
+        // A channel writes heap buffers by copying them into a temporary direct one, so the
+        // batch is assembled in a pooled direct buffer that goes back to the pool once sent
+        @Override
+        public void write(List<EncodedLine> lines) throws IOException {
+            int total = 0;
+            for (EncodedLine line : lines) {
+                total += line.length();
+            }
+            ByteBuffer buf = total <= WRITE_BUFFER_SIZE ? writeBuffers.acquire() : ByteBuffer.allocate(total);
+            for (EncodedLine line : lines) {
+                line.putTo(buf);
+            }
+            enqueue(buf.flip());
+        }
+
+        private void enqueue(ByteBuffer buf) throws IOException {
+            awaitRoom();
+            if (closing || !channel.isOpen()) {
+                writeBuffers.release(buf);
+                throw new IOException("connection closed");
+            }
+            pendingBytes.addAndGet(buf.remaining());
+            outbound.add(buf);
+            requestFlush();
+        }
+
+        // Parks the writer while the peer is behind, so the backlog stays in the
+        // client's bounded outbound queue instead of piling up here
+        private void awaitRoom() throws IOException {
+            if (pendingBytes.get() < OUTBOUND_HIGH_WATER) {
+                return;
+            }
+            flushLock.lock();
+            try {
+                while (pendingBytes.get() >= OUTBOUND_HIGH_WATER && !closing && channel.isOpen()) {
+                    flushed.await(100, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting to write");
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void signalFlushed() {
+            flushLock.lock();
+            try {
+                flushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void requestFlush() {
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        // Selector thread only
+        void flush() {
+            if (aborted) {
+                discardOutbound();
+                release();
+                return;
+            }
+            long before = pendingBytes.get();
+            try {
+                ByteBuffer buf;
+                while ((buf = outbound.peek()) != null) {
+                    channel.write(buf);
+                    if (buf.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.poll();
+                    pendingBytes.addAndGet(-buf.limit());
+                    writeBuffers.release(buf);
+                }
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+                if (closing) {
+                    release();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                discardOutbound();
+                release();
+            } finally {
+                if (before >= OUTBOUND_HIGH_WATER && pendingBytes.get() < OUTBOUND_HIGH_WATER) {
+                    signalFlushed();
+                }
+            }
+        }
+
+        private void discardOutbound() {
+            ByteBuffer buf;
+            while ((buf = outbound.poll()) != null) {
+                writeBuffers.release(buf);
+            }
+        }
+
+        private void release() {
+            connections.remove(this);
+            pendingBytes.set(0);
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            signalFlushed();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closing && channel.isOpen();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        @Override
+        public void close() {
+            closing = true;
+            requestFlush();
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+            closing = true;
+            requestFlush();
+            signalFlushed();
+        }
+
+        long footprint() {
+            long pending = 0;
+            for (ByteBuffer buf : outbound) {
+                pending += buf.capacity();
+            }
+            return decoder.capacity() + pending;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// Per-client outbound queue bounds and what happens to a client that falls behind them
+public record OutboundLimits(int maxLines, long maxBytes, int batchBytes, Overflow overflow) {
+    public enum Overflow {
+        DROP_OLDEST, DROP_NEW, DISCONNECT;
+
+        static Overflow parse(String name) {
+            return switch (name.toLowerCase()) {
+                case "drop-oldest" -> DROP_OLDEST;
+                case "drop-new" -> DROP_NEW;
+                case "disconnect" -> DISCONNECT;
+                default -> throw new IllegalArgumentException("Unknown outbound overflow policy: " + name);
+            };
+        }
+    }
+
+    public static OutboundLimits fromConfig(ServerConfig config) {
+        return new OutboundLimits(Math.max(1, config.getOutboundMaxLines()),
+                Math.max(1, config.getOutboundMaxBytes()),
+                Math.max(1, config.getOutboundBatchBytes()),
+                Overflow.parse(config.getOutboundOverflow()));
+    }
+}
@@ -0,0 +1,103 @@
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Token buckets keyed by remote address. Each bucket is one AtomicLong holding the time at
+// which it would be full again (GCRA, the token bucket written as a schedule), so a check is
+// a map lookup and a CAS, with no lock and no allocation once the address is known. The
+// map is a ConcurrentHashMap, whose updates are striped over its bins.
+public class RateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Set<InetAddress> exempt;
+    private final ConcurrentHashMap<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final LongAdder limited = new LongAdder();
+
+    // perSecond 0 or less disables the limit; burst is how many may arrive at once
+    public RateLimiter(int perSecond, int burst, Set<InetAddress> exempt) {
+        this.intervalNanos = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.exempt = exempt;
+    }
+
+    public static RateLimiter connectionsFromConfig(ServerConfig config) {
+        return new RateLimiter(config.getConnectionsPerSecond(), config.getConnectionBurst(),
+                parseExempt(config.getRateLimitExempt()));
+    }
+
+    public static RateLimiter messagesFromConfig(ServerConfig config) {
+        return new RateLimiter(config.getMessagesPerSecond(), config.getMessageBurst(),
+                parseExempt(config.getRateLimitExempt()));
+    }
+
+    // "127.0.0.1, ::1" -> addresses, "none" for no exemptions; only IP literals, so nothing
+    // here waits on DNS
+    static Set<InetAddress> parseExempt(String list) {
+        Set<InetAddress> addresses = new HashSet<>();
+        for (String entry : list.split(",")) {
+            if (entry.isBlank() || entry.trim().equalsIgnoreCase("none")) {
+                continue;
+            }
+            InetAddress address = ClientRegistry.parseLiteral(entry.trim());
+            if (address == null) {
+                throw new IllegalArgumentException("Not an IP address in chat.limit.exempt: " + entry.trim());
+            }
+            addresses.add(address);
+        }
+        return Set.copyOf(addresses);
+    }
+
+    public boolean isEnabled() {
+        return intervalNanos > 0;
+    }
+
+    // Takes one token from the address's bucket; false, and counted, if it is empty
+    public boolean tryAcquire(InetAddress address, long nowNanos) {
+        if (intervalNanos == 0 || address == null || exempt.contains(address)) {
+            return true;
+        }
+        AtomicLong full = buckets.get(address);
+        if (full == null) {
+            full = buckets.computeIfAbsent(address, k -> new AtomicLong(nowNanos));
+        }
+        while (true) {
+            long current = full.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            if (next - nowNanos > burstNanos) {
+                limited.increment();
+                return false;
+            }
+            if (full.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // Forgets addresses whose bucket has refilled; a new bucket starts full, so nothing is lost
+    // beyond a token taken while the entry is being removed
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(full -> full.get() - now <= 0);
+    }
+
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    public int getTrackedAddresses() {
+        return buckets.size();
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "off";
+        }
+        return String.format("%d/s, burst %d (%d limited)",
+                TimeUnit.SECONDS.toNanos(1) / intervalNanos, burstNanos / intervalNanos, getLimited());
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// Pluggable reply backend, consulted for messages the intent rules have no answer for.
+// Implementations are found with java.util.ServiceLoader (META-INF/services/Responder) in
+// the jars of chat.responders.dir, or built in (RetrievalResponder).
+//
+// respond() is called on a connection's I/O thread and must return at once: anything slow
+// belongs on the executor it is given. The server bounds every call with a timeout and a
+// concurrency limit, and falls back to the rule-based reply when the future completes with
+// null (declined), fails or takes too long.
+public interface Responder {
+    // Short name for stats and logs
+    String name();
+
+    // Called once before the first query; a failure leaves the responder out
+    default void init(ServerConfig config) throws IOException {
+    }
+
+    CompletableFuture<String> respond(Query query, Executor executor);
+
+    default void close() {
+    }
+
+    record Query(int clientId, String input) {}
+}
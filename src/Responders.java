@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Runs the configured Responders, in order, for messages the intent rules have no answer for.
+// Every call is bounded three ways: a per-responder concurrency limit, a bounded executor and
+// a timeout. A responder that declines, fails or hits a bound passes the message on to the
+// next one and finally to the rule-based reply, so a slow backend only costs its own callers
+// latency and never holds up connection I/O.
+public class Responders {
+    private static final int QUEUE_PER_THREAD = 16;
+
+    private final List<Slot> slots;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    private static final class Slot {
+        final Responder responder;
+        final int maxConcurrent;
+        // Held until the backend's own future completes, not just until the timeout, so a
+        // hung backend runs out of permits instead of piling up threads
+        final Semaphore permits;
+        final LongAdder requests = new LongAdder();
+        final LongAdder answered = new LongAdder();
+        final LongAdder declined = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder busy = new LongAdder();
+        final ServerMetrics.Histogram latency = new ServerMetrics.Histogram();
+
+        Slot(Responder responder, int maxConcurrent) {
+            this.responder = responder;
+            this.maxConcurrent = maxConcurrent;
+            this.permits = new Semaphore(maxConcurrent);
+        }
+    }
+
+    public Responders(List<Responder> responders, int threads, int maxConcurrent, long timeoutMillis) {
+        this.slots = new ArrayList<>();
+        for (Responder responder : responders) {
+            slots.add(new Slot(responder, Math.max(1, maxConcurrent)));
+        }
+        this.timeoutMillis = timeoutMillis;
+        if (slots.isEmpty()) {
+            this.executor = null;
+            return;
+        }
+        int size = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * QUEUE_PER_THREAD), r -> {
+            Thread t = new Thread(r, "Responder-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // The built-in retrieval backend first, if configured, then plugins in discovery order
+    public static Responders fromConfig(ServerConfig config, Consumer<String> log) {
+        List<Responder> found = new ArrayList<>();
+        if (config.getRetrievalFile() != null) {
+            found.add(new RetrievalResponder());
+        }
+        try {
+            for (Responder responder : ServiceLoader.load(Responder.class, pluginLoader(config.getRespondersDir()))) {
+                found.add(responder);
+            }
+        } catch (ServiceConfigurationError | IOException e) {
+            log.accept("Responder plugins not loaded: " + e.getMessage());
+        }
+
+        List<Responder> ready = new ArrayList<>();
+        for (Responder responder : found) {
+            try {
+                responder.init(config);
+                ready.add(responder);
+                log.accept("Responder loaded: " + responder.name());
+            } catch (IOException | RuntimeException e) {
+                log.accept("Responder " + responder.name() + " disabled: " + e.getMessage());
+            }
+        }
+        return new Responders(ready, config.getResponderThreads(), config.getResponderMaxConcurrent(),
+                config.getResponderTimeoutMillis());
+    }
+
+    // Jars in dir, on top of the server's own classpath
+    private static ClassLoader pluginLoader(String dir) throws IOException {
+        ClassLoader parent = Responders.class.getClassLoader();
+        if (dir == null || !Files.isDirectory(Path.of(dir))) {
+            return parent;
+        }
+        List<URL> jars = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(dir), "*.jar")) {
+            for (Path jar : files) {
+                try {
+                    jars.add(jar.toUri().toURL());
+                } catch (MalformedURLException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        return new URLClassLoader(jars.toArray(new URL[0]), parent);
+    }
+
+    public boolean isEnabled() {
+        return !slots.isEmpty();
+    }
+
+    // Never completes exceptionally: the worst case is the fallback after every timeout
+    public CompletableFuture<EncodedLine> respond(int clientId, String input, EncodedLine fallback) {
+        CompletableFuture<EncodedLine> result = new CompletableFuture<>();
+        attempt(0, new Responder.Query(clientId, input), fallback, result);
+        return result;
+    }
+
+    private void attempt(int index, Responder.Query query, EncodedLine fallback, CompletableFuture<EncodedLine> result) {
+        if (index == slots.size()) {
+            result.complete(fallback);
+            return;
+        }
+        Slot slot = slots.get(index);
+        slot.requests.increment();
+        if (!slot.permits.tryAcquire()) {
+            slot.busy.increment();
+            attempt(index + 1, query, fallback, result);
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<String> answer;
+        try {
+            answer = slot.responder.respond(query, executor);
+        } catch (RuntimeException e) {
+            answer = CompletableFuture.failedFuture(e);
+        }
+        answer.whenComplete((text, error) -> slot.permits.release());
+        answer.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((text, error) -> {
+            slot.latency.recordNanos(System.nanoTime() - start);
+            if (error == null && text != null && !text.isBlank()) {
+                slot.answered.increment();
+                result.complete(EncodedLine.of(text));
+                return;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                slot.declined.increment();
+            } else if (cause instanceof TimeoutException) {
+                slot.timeouts.increment();
+            } else if (cause instanceof RejectedExecutionException) {
+                slot.busy.increment();
+            } else {
+                slot.failures.increment();
+            }
+            attempt(index + 1, query, fallback, result);
+        });
+    }
+
+    // Lines for @metrics
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Slot slot : slots) {
+            lines.add(String.format("Responder %s: %d requests, %d answered, %d declined, %d timed out, " +
+                            "%d failed, %d busy, %d/%d in flight, latency %s",
+                    slot.responder.name(), slot.requests.sum(), slot.answered.sum(), slot.declined.sum(),
+                    slot.timeouts.sum(), slot.failures.sum(), slot.busy.sum(),
+                    slot.maxConcurrent - slot.permits.availablePermits(), slot.maxConcurrent,
+                    slot.latency.describe()));
+        }
+        return lines;
+    }
+
+    // One series per responder, labelled with its name
+    public void writePrometheus(StringBuilder sb) {
+        if (slots.isEmpty()) {
+            return;
+        }
+        series(sb, "chat_responder_requests_total", "Messages offered to a responder", "counter", s -> s.requests.sum());
+        series(sb, "chat_responder_answered_total", "Messages a responder answered", "counter", s -> s.answered.sum());
+        series(sb, "chat_responder_timeouts_total", "Responder calls that hit the timeout", "counter", s -> s.timeouts.sum());
+        series(sb, "chat_responder_failures_total", "Responder calls that failed", "counter", s -> s.failures.sum());
+        series(sb, "chat_responder_busy_total", "Responder calls skipped at the concurrency limit", "counter",
+                s -> s.busy.sum());
+        series(sb, "chat_responder_in_flight", "Responder calls running", "gauge",
+                s -> (long) s.maxConcurrent - s.permits.availablePermits());
+    }
+
+    private interface Value {
+        long of(Slot slot);
+    }
+
+    private void series(StringBuilder sb, String name, String help, String type, Value value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Slot slot : slots) {
+            sb.append(name).append("{responder=\"").append(slot.responder.name()).append("\"} ")
+                    .append(value.of(slot)).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (slots.isEmpty()) {
+            return "none";
+        }
+        List<String> names = new ArrayList<>();
+        for (Slot slot : slots) {
+            names.add(slot.responder.name());
+        }
+        return String.join(", ", names) + " (" + executor.getActiveCount() + "/" + executor.getMaximumPoolSize() +
+                " threads busy, " + executor.getQueue().size() + " queued, timeout " + timeoutMillis + " ms)";
+    }
+
+    public void shutdown() {
+        for (Slot slot : slots) {
+            try {
+                slot.responder.close();
+            } catch (RuntimeException ignored) {
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded LRU of trimmed input -> encoded reply, split into independently locked segments.
+// Entries remember the matcher they were computed with, so a rule reload invalidates them.
+public class ResponseCache {
+    private static final int SEGMENTS = 16;
+
+    public record Entry(IntentMatcher matcher, IntentMatcher.Intent intent, EncodedLine reply) {}
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResponseCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (this.capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    public static ResponseCache fromConfig(ServerConfig config) {
+        return new ResponseCache(config.getResponseCacheSize());
+    }
+
+    // Returns the entry cached for this input under the given rules, or null. The input may be
+    // a CharView: it hashes and compares like the String keys, so a hit copies nothing.
+    public Entry get(CharSequence input, IntentMatcher matcher) {
+        if (capacity == 0) {
+            return null;
+        }
+        Segment segment = segmentFor(input);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(input);
+        }
+        if (entry == null || entry.matcher() != matcher) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    // Personal replies are never stored, they differ per client
+    public void put(String input, IntentMatcher matcher, IntentMatcher.Intent intent, EncodedLine reply) {
+        if (capacity == 0 || intent.personal()) {
+            return;
+        }
+        Segment segment = segmentFor(input);
+        synchronized (segment) {
+            segment.put(input, new Entry(matcher, intent, reply));
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(CharSequence input) {
+        int h = input.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = getHits();
+        long total = h + getMisses();
+        return String.format("%d hits, %d misses (%.1f%%), %d/%d entries",
+                h, total - h, total == 0 ? 0.0 : 100.0 * h / total, size(), capacity);
+    }
+
+    private static class Segment extends LinkedHashMap<String, Entry> {
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Simulated "typing" delay before bot replies. Replies are released by one shared
+// timer thread, so the thread that read the message is never parked.
+public class ResponsePacer {
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    public ResponsePacer(long minDelayMillis, long maxDelayMillis) {
+        this.minDelayMillis = Math.max(0, minDelayMillis);
+        this.maxDelayMillis = Math.max(this.minDelayMillis, maxDelayMillis);
+        if (this.maxDelayMillis == 0) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ResponsePacer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static ResponsePacer fromConfig(ServerConfig config) {
+        if (config.getPacing().equals("none")) {
+            return new ResponsePacer(0, 0);
+        }
+        return new ResponsePacer(config.getPacingMinDelayMs(), config.getPacingMaxDelayMs());
+    }
+
+    public boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    public long nextDelayNanos() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long millis = minDelayMillis == maxDelayMillis ? minDelayMillis
+                : ThreadLocalRandom.current().nextLong(minDelayMillis, maxDelayMillis + 1);
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public void release(Runnable task, long dueNanos) {
+        scheduler.schedule(task, Math.max(0, dueNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isEnabled() ? minDelayMillis + "-" + maxDelayMillis + " ms" : "none";
+    }
+}
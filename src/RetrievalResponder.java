@@ -0,0 +1,113 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// Built-in Responder answering from a local knowledge file (chat.retrieval.file) of
+// "question | answer" lines. Questions are indexed by term; a message is scored against
+// each entry by the IDF weight of the terms they share, as a share of the message's own
+// weight, and the best entry answers if it covers at least chat.retrieval.minScorePercent.
+public class RetrievalResponder implements Responder {
+    private List<String> answers = List.of();
+    private Map<String, List<Integer>> postings = Map.of();
+    private Map<String, Double> idf = Map.of();
+    private double unknownIdf;
+    private double minScore;
+
+    @Override
+    public String name() {
+        return "retrieval";
+    }
+
+    @Override
+    public void init(ServerConfig config) throws IOException {
+        minScore = config.getRetrievalMinScorePercent() / 100.0;
+        load(Path.of(config.getRetrievalFile()));
+    }
+
+    void load(Path file) throws IOException {
+        List<String> loaded = new ArrayList<>();
+        Map<String, List<Integer>> index = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] cols = line.split("\\|", 2);
+                if (cols.length < 2 || cols[1].isBlank()) {
+                    throw new IOException(file.getFileName() + " line " + lineNo + ": expected question | answer");
+                }
+                int entry = loaded.size();
+                loaded.add(cols[1].trim().replace("\\n", "\n"));
+                for (String term : terms(cols[0])) {
+                    index.computeIfAbsent(term, k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+        Map<String, Double> weights = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : index.entrySet()) {
+            weights.put(e.getKey(), Math.log(1 + (double) loaded.size() / e.getValue().size()));
+        }
+        answers = loaded;
+        postings = index;
+        idf = weights;
+        unknownIdf = Math.log(1 + loaded.size());
+    }
+
+    @Override
+    public CompletableFuture<String> respond(Query query, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> lookup(query.input()), executor);
+    }
+
+    // Null when no entry covers enough of the message
+    String lookup(String input) {
+        Set<String> terms = terms(input);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        double total = 0;
+        double[] scores = new double[answers.size()];
+        for (String term : terms) {
+            Double weight = idf.get(term);
+            if (weight == null) {
+                total += unknownIdf;
+                continue;
+            }
+            total += weight;
+            for (int entry : postings.get(term)) {
+                scores[entry] += weight;
+            }
+        }
+        int best = -1;
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > 0 && (best < 0 || scores[i] > scores[best])) {
+                best = i;
+            }
+        }
+        return best >= 0 && scores[best] / total >= minScore ? answers.get(best) : null;
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() > 1) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
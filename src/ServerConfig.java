@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+public class ServerConfig {
+    private final Properties props;
+
+    public ServerConfig(Properties props) {
+        this.props = props;
+    }
+
+    public static ServerConfig fromSystemProperties() {
+        return new ServerConfig(System.getProperties());
+    }
+
+    // Properties file (optional), overridden by system properties, overridden by the given values
+    public static ServerConfig load(Path file, Properties overrides) throws IOException {
+        Properties props = new Properties();
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            }
+        }
+        props.putAll(System.getProperties());
+        props.putAll(overrides);
+        return new ServerConfig(props);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public int getPort() {
+        return getInt("chat.port", 5000);
+    }
+
+    // Loopback port for the headless admin console; 0 disables it
+    public int getAdminPort() {
+        return getInt("chat.admin.port", 0);
+    }
+
+    // Loopback port of the Prometheus /metrics endpoint; 0 disables it
+    public int getMetricsPort() {
+        return getInt("chat.metrics.port", 0);
+    }
+
+    // thread (default), virtual or nio
+    public String getEngine() {
+        return getString("chat.engine", "thread");
+    }
+
+    public int getMaxClients() {
+        return getInt("chat.maxClients", 100);
+    }
+
+    // Rate limits are per remote address; 0 turns a limit off
+    public int getConnectionsPerSecond() {
+        return getInt("chat.limit.connectionsPerSecond", 10);
+    }
+
+    public int getConnectionBurst() {
+        return getInt("chat.limit.connectionBurst", 20);
+    }
+
+    public int getMessagesPerSecond() {
+        return getInt("chat.limit.messagesPerSecond", 20);
+    }
+
+    public int getMessageBurst() {
+        return getInt("chat.limit.messageBurst", 40);
+    }
+
+    // Comma-separated IP addresses that are never rate limited
+    public String getRateLimitExempt() {
+        return getString("chat.limit.exempt", "127.0.0.1,::1");
+    }
+
+    // typing (default) or none
+    public String getPacing() {
+        return getString("chat.pacing", "typing").toLowerCase();
+    }
+
+    public int getPacingMinDelayMs() {
+        return getInt("chat.pacing.minDelayMs", 500);
+    }
+
+    public int getPacingMaxDelayMs() {
+        return getInt("chat.pacing.maxDelayMs", 1000);
+    }
+
+    // null means the intents.txt bundled with the classes
+    public String getIntentsFile() {
+        return getString("chat.intents.file", null);
+    }
+
+    public int getIntentsReloadSeconds() {
+        return getInt("chat.intents.reloadSeconds", 2);
+    }
+
+    // 0 disables the input -> reply cache
+    public int getResponseCacheSize() {
+        return getInt("chat.cache.size", 1024);
+    }
+
+    public int getLogCapacity() {
+        return getInt("chat.log.capacity", 8192);
+    }
+
+    public int getLogFlushMillis() {
+        return getInt("chat.log.flushMillis", 50);
+    }
+
+    // Off leaves the server without a transcript, @save or @search
+    public boolean isJournalEnabled() {
+        return getBoolean("chat.journal.enabled", true);
+    }
+
+    public String getJournalDir() {
+        return getString("chat.journal.dir", "journal");
+    }
+
+    public int getJournalSegmentBytes() {
+        return getInt("chat.journal.segmentBytes", 8 * 1024 * 1024);
+    }
+
+    public int getJournalSyncMillis() {
+        return getInt("chat.journal.syncMillis", 200);
+    }
+
+    // Framed connections with no inbound traffic for this long are closed; 0 keeps them forever
+    public int getIdleTimeoutSeconds() {
+        return getInt("chat.idle.timeoutSeconds", 60);
+    }
+
+    // Same for text connections, which cannot be pinged; by default only TCP keepalive
+    // notices a dead text client
+    public int getIdleTextTimeoutSeconds() {
+        return getInt("chat.idle.textTimeoutSeconds", 0);
+    }
+
+    // Quiet time before the OS starts keepalive probes on a client socket; 0 leaves the OS default
+    public int getKeepAliveSeconds() {
+        return getInt("chat.idle.keepAliveSeconds", 120);
+    }
+
+    // Framed connections idle this long are pinged; the client's pong keeps them alive
+    public int getIdlePingSeconds() {
+        return getInt("chat.idle.pingSeconds", 20);
+    }
+
+    // Resolution of the idle timer wheel
+    public int getIdleTickMillis() {
+        return getInt("chat.idle.tickMillis", 1000);
+    }
+
+    // 1 - 99 joins a cluster as that node; 0 runs standalone
+    public int getClusterNodeId() {
+        return getInt("chat.cluster.nodeId", 0);
+    }
+
+    // Port other nodes connect to
+    public int getClusterPort() {
+        return getInt("chat.cluster.port", 5100);
+    }
+
+    // Comma-separated host:port of nodes to join through; one live member is enough
+    public String getClusterSeeds() {
+        return getString("chat.cluster.seeds", "");
+    }
+
+    // host:port other nodes should use for this one; localhost:<chat.cluster.port> if unset
+    public String getClusterAdvertise() {
+        return getString("chat.cluster.advertise", null);
+    }
+
+    public int getClusterHeartbeatMillis() {
+        return getInt("chat.cluster.heartbeatMillis", 1000);
+    }
+
+    // How long cross-node requests (@list, @kick) wait for each node
+    public int getClusterTimeoutMillis() {
+        return getInt("chat.cluster.timeoutMillis", 2000);
+    }
+
+    // How long stop waits for pending replies and for clients to take the disconnect signal
+    // before closing the remaining connections by force
+    public int getShutdownDrainSeconds() {
+        return getInt("chat.shutdown.drainSeconds", 5);
+    }
+
+    public int getSessionCapacity() {
+        return getInt("chat.session.capacity", 100_000);
+    }
+
+    // Disconnected sessions can be resumed for this long
+    public int getSessionTtlMinutes() {
+        return getInt("chat.session.ttlMinutes", 30);
+    }
+
+    // Sessions are saved here on stop and restored on start; unset keeps them in memory only
+    public String getSessionSnapshot() {
+        return getString("chat.session.snapshot", null);
+    }
+
+    public int getSessionSnapshotSeconds() {
+        return getInt("chat.session.snapshotSeconds", 300);
+    }
+
+    // Directory of Responder plugin jars, found with ServiceLoader
+    public String getRespondersDir() {
+        return getString("chat.responders.dir", "plugins");
+    }
+
+    public int getResponderThreads() {
+        return getInt("chat.responders.threads", 4);
+    }
+
+    // Calls each responder may have running at once; more fall through to the next one
+    public int getResponderMaxConcurrent() {
+        return getInt("chat.responders.maxConcurrent", 16);
+    }
+
+    public int getResponderTimeoutMillis() {
+        return getInt("chat.responders.timeoutMs", 2000);
+    }
+
+    // Question | answer file for the built-in retrieval responder; unset leaves it off
+    public String getRetrievalFile() {
+        return getString("chat.retrieval.file", null);
+    }
+
+    // Share of the question's term weight an entry must cover to be used as the answer
+    public int getRetrievalMinScorePercent() {
+        return getInt("chat.retrieval.minScorePercent", 50);
+    }
+
+    public int getOutboundMaxLines() {
+        return getInt("chat.outbound.maxLines", 256);
+    }
+
+    public int getOutboundMaxBytes() {
+        return getInt("chat.outbound.maxBytes", 1024 * 1024);
+    }
+
+    // Pending lines are coalesced into socket writes of up to this many bytes
+    public int getOutboundBatchBytes() {
+        return getInt("chat.outbound.batchBytes", 64 * 1024);
+    }
+
+    // drop-oldest, drop-new or disconnect
+    public String getOutboundOverflow() {
+        return getString("chat.outbound.overflow", "disconnect");
+    }
+}
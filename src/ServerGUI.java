@@ -1,17 +1,13 @@
 import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import java.awt.*;
 import java.io.*;
-import java.net.*;
 import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
+import java.util.Date;
 
+// Swing window over a ChatServer: shows the log and client list and forwards commands
 public class ServerGUI extends JFrame {
     private JPanel panel1;
     private JButton startButton;
@@ -21,24 +17,59 @@ public class ServerGUI extends JFrame {
     private JButton saveLogButton;
     private JLabel Port;
     private JLabel NumPort;
-    private JTextArea ListClient;
+    private JScrollPane clientScroll;
+    private JList<ClientHandler> ListClient;
     private JTextArea log_command;
     private JTextField inputcommand;
     private JButton submit_command;
 
     private final int port;
-    private ServerSocket ss;
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
-    private final ExecutorService clientPool = Executors.newCachedThreadPool();
-    private final AtomicBoolean isRunning = new AtomicBoolean(false);
-    private final AtomicInteger numClients = new AtomicInteger(0);
+    private final ChatServer server;
+    private final ClientListModel clientList = new ClientListModel();
+    private TitledBorder clientTitle;
 
-    private static final int MAX_CLIENTS = 100;
-    private static final Pattern VALID_FILENAME = Pattern.compile("[a-zA-Z0-9_.-]*");
     private static final int MAX_LOG_SIZE = 50000;
+    // Client list deltas are applied at most this often
+    private static final int CLIENT_LIST_TICK_MILLIS = 250;
 
     public ServerGUI(int port) {
+        this(port, ServerConfig.fromSystemProperties());
+    }
+
+    public ServerGUI(int port, ServerConfig config) {
         this.port = port;
+        this.server = new ChatServer(port, config, new ChatServer.Listener() {
+            @Override
+            public void logAppended(String batch) {
+                SwingUtilities.invokeLater(() -> appendLog(batch));
+            }
+
+            @Override
+            public void clientsChanged() {
+                clientList.refresh();
+            }
+
+            @Override
+            public void clientAdded(ClientHandler handler) {
+                clientList.added(handler);
+            }
+
+            @Override
+            public void clientRemoved(ClientHandler handler) {
+                clientList.removed(handler);
+            }
+
+            @Override
+            public void statusChanged(boolean running) {
+                setStatus(running);
+            }
+
+            @Override
+            public boolean clearLog() {
+                SwingUtilities.invokeLater(() -> textArea1.setText(""));
+                return true;
+            }
+        });
         setTitle("Server");
         setContentPane(panel1);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -51,7 +82,6 @@ public class ServerGUI extends JFrame {
         setStatus(false);
 
         textArea1.setEditable(false);
-        ListClient.setEditable(false);
         log_command.setEditable(false);
 
         Font monoFont = new Font("Monospaced", Font.PLAIN, 12);
@@ -59,15 +89,32 @@ public class ServerGUI extends JFrame {
         ListClient.setFont(monoFont);
         log_command.setFont(monoFont);
 
+        // Rows are rendered on demand, so only the visible ones pay for getClientInfo()
+        ListClient.setModel(clientList);
+        ListClient.setFixedCellHeight(ListClient.getFontMetrics(monoFont).getHeight() + 2);
+        ListClient.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ClientHandler ch = (ClientHandler) value;
+                String text = (index + 1) + ". " + ch.getClientInfo() + " [" + ch.getQueueInfo() + "]";
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        clientTitle = BorderFactory.createTitledBorder("Jumlah Client: 0");
+        clientScroll.setBorder(clientTitle);
+        new Timer(CLIENT_LIST_TICK_MILLIS, e -> updateClientlist()).start();
+
         startButton.addActionListener(e -> {
-            if (!isRunning.get()) {
-                new Thread(() -> startServer(port)).start();
+            if (!server.isRunning()) {
+                startServer();
             } else {
-                log("Server already running!");
+                server.log("Server already running!");
             }
         });
 
-        stopButton.addActionListener(e -> stopServer());
+        // Draining clients can take up to chat.shutdown.drainSeconds; the log shows its progress
+        stopButton.addActionListener(e -> new Thread(server::stop, "ServerStop").start());
         saveLogButton.addActionListener(e -> saveLog());
 
         submit_command.addActionListener(e -> {
@@ -87,102 +134,41 @@ public class ServerGUI extends JFrame {
         });
     }
 
-    private void startServer(int port) {
-        if(!isValid(port)) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this, "Port tidak valid" +
-                        "\nPlease enter a valid port!(1024 - 65535)", "Port Error", JOptionPane.ERROR_MESSAGE);
-            });
-            return;
-        }
-        try {
-            ss = new ServerSocket(port);
-            log("Server Started on port : " + port);
-            setStatus(true);
-            isRunning.set(true);
-
-            while (!ss.isClosed() && isRunning.get()) {
-                try {
-                    Socket client = ss.accept();
-
-                    if(clients.size() >= MAX_CLIENTS) {
-                        log("Server reached maximum clients limit. " +
-                                "Rejecting connection from: " + client.getInetAddress().getHostAddress());
-                        try (PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
-                            out.println("Server full. Please try again later.");
-                        }
-                        client.close();
-                        continue;
-                    }
-
-                    log("Client connected : " + client.getRemoteSocketAddress());
-                    ClientHandler handler = new ClientHandler(client, this);
-                    clients.add(handler);
-                    numClients.incrementAndGet();
-                    updateClientlist();
-                    clientPool.submit(handler);
-                } catch (IOException e) {
-                    if (isRunning.get() && !ss.isClosed()) {
-                        log("Connection Error: " + e.getMessage());
-                    }
-                }
-            }
-        } catch (IOException e) {
-            log("Server Error : " + e.getMessage());
-        } finally {
-            isRunning.set(false);
-            setStatus(false);
-        }
+    public ChatServer getServer() {
+        return server;
     }
 
-    private void stopServer() {
-        isRunning.set(false);
-        try {
-            // Send disconnect signal to all clients
-            for (ClientHandler ch : new ArrayList<>(clients)) {
-                ch.closeConnection();
-            }
-
-            if (ss != null && !ss.isClosed()) {
-                ss.close();
-            }
-
-            // Give threads time to finish
-            clientPool.shutdown();
-            if (!clientPool.isTerminated()) {
-                clientPool.shutdownNow();
-            }
-
-            clients.clear();
-            numClients.set(0);
-            updateClientlist();
-            log("Server Stopped");
-
-        } catch (IOException e) {
-            log("Error stopping server: " + e.getMessage());
-        } finally {
-            setStatus(false);
+    private void startServer() {
+        if(!ChatServer.isValid(port)) {
+            JOptionPane.showMessageDialog(this, "Port tidak valid" +
+                    "\nPlease enter a valid port!(1024 - 65535)", "Port Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        new Thread(server::start, "ChatServer").start();
     }
 
-    public synchronized void log(String msg) {
-        String timestamp = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date());
-        String fullMsg = "[" + timestamp + "] " + msg;
-        SwingUtilities.invokeLater(() -> {
-            textArea1.append(fullMsg + "\n");
-
-            // Prevent log from growing too large
-            if (textArea1.getText().length() > MAX_LOG_SIZE) {
-                String text = textArea1.getText();
-                int cutPoint = text.indexOf('\n', text.length() - MAX_LOG_SIZE + 1000);
-                if (cutPoint > 0) {
-                    textArea1.setText(text.substring(cutPoint + 1));
+    // EDT only; one call per pipeline batch
+    private void appendLog(String batch) {
+        Document doc = textArea1.getDocument();
+        try {
+            doc.insertString(doc.getLength(), batch, null);
+
+            // Prevent log from growing too large, cutting at a line break
+            int length = doc.getLength();
+            if (length > MAX_LOG_SIZE) {
+                int from = Math.min(length - MAX_LOG_SIZE + 1000, length);
+                String window = doc.getText(from, Math.min(4096, length - from));
+                int newline = window.indexOf('\n');
+                if (newline >= 0) {
+                    doc.remove(0, from + newline + 1);
                 }
             }
+        } catch (BadLocationException e) {
+            // Document changed under us (@clear); the next batch starts fresh
+        }
 
-            // Auto-scroll to bottom
-            textArea1.setCaretPosition(textArea1.getDocument().getLength());
-        });
+        // Auto-scroll to bottom
+        textArea1.setCaretPosition(doc.getLength());
     }
 
     private void setStatus(boolean status) {
@@ -203,153 +189,44 @@ public class ServerGUI extends JFrame {
                 new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".txt"));
 
         int result = chooser.showSaveDialog(this);
-        if (result == JFileChooser.APPROVE_OPTION) {
-            File file = chooser.getSelectedFile();
+        if (result != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        if (!server.hasJournal()) {
+            // Without a transcript the log view is all there is
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
                 writer.write(textArea1.getText());
-                log("Log saved to: " + file.getAbsolutePath());
+                server.log("Log saved to: " + file.getAbsolutePath());
             } catch (IOException e) {
-                log("Save Error: " + e.getMessage());
-                JOptionPane.showMessageDialog(this, "Failed to save log: " + e.getMessage(),
-                        "Save Error", JOptionPane.ERROR_MESSAGE);
+                server.log("Save Error: " + e.getMessage());
             }
+            return;
         }
+        server.exportLog(file, error -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                "Failed to save log: " + error, "Save Error", JOptionPane.ERROR_MESSAGE)));
     }
 
-    public void removeClient(ClientHandler handler) {
-        if (clients.remove(handler)) {
-            numClients.decrementAndGet();
-            updateClientlist();
-        }
-    }
-
+    // EDT only, from the timer; the periodic refresh repaints the queue depths of visible rows
     private void updateClientlist() {
-        SwingUtilities.invokeLater(() -> {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Jumlah Client: ").append(clients.size()).append("\n\n");
-
-            int index = 1;
-            for (ClientHandler ch : clients) {
-                if (ch.isConnected()) {
-                    sb.append(index).append(". ").append(ch.getClientInfo()).append("\n");
-                    index++;
-                }
-            }
-
-            ListClient.setText(sb.toString());
-            ListClient.setCaretPosition(0);
-        });
-    }
-
-    private void command(String command) {
-        if (command == null || command.trim().isEmpty()) {
+        if (!clientList.apply(server)) {
             return;
         }
+        String title = "Jumlah Client: " + clientList.getSize();
+        if (!title.equals(clientTitle.getTitle())) {
+            clientTitle.setTitle(title);
+            clientScroll.repaint();
+        }
+        ListClient.repaint();
+    }
 
+    private void command(String command) {
         log_command.append("> " + command + "\n");
         log_command.setCaretPosition(log_command.getDocument().getLength());
 
-        String[] parts = command.split("\\s+", 2);
-        String cmd = parts[0].toLowerCase();
-
-        switch (cmd) {
-            case "@list" -> {
-                updateClientlist();
-                log("Client list updated");
-            }
-            case "@broadcast" -> {
-                if (parts.length < 2) {
-                    log("Usage: @broadcast <message>");
-                    return;
-                }
-                String msg = parts[1].trim();
-                if (msg.isEmpty()) {
-                    log("Broadcast message cannot be empty");
-                    return;
-                }
-                int sent = 0;
-                for(ClientHandler ch : new ArrayList<>(clients)){
-                    if (ch.sendMessage("[SERVER BROADCAST] " + msg)) {
-                        sent++;
-                    }
-                }
-                log("Broadcast sent to " + sent + " clients: " + msg);
-            }
-            case "@kick" -> {
-                if (parts.length < 2) {
-                    log("Usage: @kick <client_id or ip>");
-                    return;
-                }
-                String target = parts[1].trim();
-                boolean found = false;
-
-                for(ClientHandler ch : new ArrayList<>(clients)){
-                    String clientInfo = ch.getClientInfo();
-                    if(clientInfo.contains(target) ||
-                            String.valueOf(ch.getClientID()).equals(target)){
-                        ch.sendMessage("[SERVER] You have been disconnected by administrator");
-                        ch.closeConnection();
-                        log("Kicked client: " + clientInfo);
-                        found = true;
-                        break;
-                    }
-                }
-                if(!found){
-                    log("Client not found: " + target);
-                }
-            }
-            case "@shutdown" -> {
-                log("Shutdown command received");
-                stopServer();
-            }
-            case "@save" -> {
-                if (parts.length < 2) {
-                    log("Usage: @save <filename>");
-                    return;
-                }
-                String filename = parts[1].trim();
-                if (!VALID_FILENAME.matcher(filename).matches()) {
-                    log("Invalid filename. Use only letters, numbers, dots, hyphens and underscores.");
-                    return;
-                }
-                try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))){
-                    writer.write(textArea1.getText());
-                    log("Log saved to: " + new File(filename).getAbsolutePath());
-                } catch (IOException e) {
-                    log("Save Error: " + e.getMessage());
-                }
-            }
-            case "@clear" -> {
-                textArea1.setText("");
-                log("Log cleared");
-            }
-            case "@status" -> {
-                log("Server Status: " + (isRunning.get() ? "Running" : "Stopped"));
-                log("Port: " + port);
-                log("Connected clients: " + clients.size());
-                log("Max clients: " + MAX_CLIENTS);
-            }
-            case "@help" -> {
-                String help = """
-                    Available commands:
-                    @list - Show connected clients
-                    @broadcast <msg> - Send message to all clients
-                    @kick <client_id|ip> - Disconnect a client
-                    @shutdown - Stop the server
-                    @save <filename> - Save log to file
-                    @clear - Clear log display
-                    @status - Show server status
-                    @help - Show this help""";
-                log(help);
-                log_command.append(help + "\n");
-            }
-            default -> {
-                log("Unknown command: " + command + " (type @help for available commands)");
-            }
-        }
-    }
-
-    private boolean isValid(int port){
-        return port >= 1024 && port <= 65535;
+        server.command(command, text -> SwingUtilities.invokeLater(() -> {
+            log_command.append(text + "\n");
+            log_command.setCaretPosition(log_command.getDocument().getLength());
+        }));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters behind @metrics and the Prometheus endpoint. Everything recorded on
+// the message path is a LongAdder, so concurrent connections never contend on one cache line.
+public class ServerMetrics {
+    final LongAdder messagesIn = new LongAdder();
+    final LongAdder messagesOut = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejectedFull = new LongAdder();
+    final LongAdder idleTimeouts = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final Histogram responseLatency = new Histogram();
+    private final Map<String, LongAdder> intentHits = new ConcurrentHashMap<>();
+
+    // Per-second rates, refreshed by tick()
+    private long lastTickNanos = System.nanoTime();
+    private long lastIn;
+    private long lastOut;
+    private long lastBytesIn;
+    private long lastBytesOut;
+    private long lastAccepted;
+    private volatile double[] rates = new double[5];
+
+    public void intentHit(String intent) {
+        LongAdder counter = intentHits.get(intent);
+        if (counter == null) {
+            counter = intentHits.computeIfAbsent(intent, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    // Called once a second by the server's maintenance thread
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastTickNanos) / 1e9;
+        long in = messagesIn.sum();
+        long out = messagesOut.sum();
+        long bIn = bytesIn.sum();
+        long bOut = bytesOut.sum();
+        long acc = accepted.sum();
+        rates = new double[]{(in - lastIn) / seconds, (out - lastOut) / seconds, (bIn - lastBytesIn) / seconds,
+                (bOut - lastBytesOut) / seconds, (acc - lastAccepted) / seconds};
+        lastTickNanos = now;
+        lastIn = in;
+        lastOut = out;
+        lastBytesIn = bIn;
+        lastBytesOut = bOut;
+        lastAccepted = acc;
+    }
+
+    public Map<String, Long> getIntentHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        intentHits.forEach((name, counter) -> hits.put(name, counter.sum()));
+        return hits;
+    }
+
+    // Lines for @metrics
+    public String[] describe() {
+        double[] r = rates;
+        return new String[]{
+                String.format("Messages: %.1f/s in, %.1f/s out (total %d in, %d out)",
+                        r[0], r[1], messagesIn.sum(), messagesOut.sum()),
+                String.format("Bytes: %.1f KB/s in, %.1f KB/s out (total %d in, %d out)",
+                        r[2] / 1024, r[3] / 1024, bytesIn.sum(), bytesOut.sum()),
+                String.format("Connections: %.1f/s accepted (total %d), %d rejected when full, %d idle timeouts, %d disconnects",
+                        r[4], accepted.sum(), rejectedFull.sum(), idleTimeouts.sum(), disconnects.sum()),
+                "Response latency (read -> write): " + responseLatency.describe(),
+                "Intent hits: " + getIntentHits()
+        };
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public void writePrometheus(StringBuilder sb) {
+        counter(sb, "chat_messages_received_total", "Lines received from clients", messagesIn.sum());
+        counter(sb, "chat_messages_sent_total", "Lines written to clients", messagesOut.sum());
+        counter(sb, "chat_bytes_received_total", "Bytes read from client sockets", bytesIn.sum());
+        counter(sb, "chat_bytes_sent_total", "Bytes written to client sockets", bytesOut.sum());
+        counter(sb, "chat_connections_accepted_total", "Connections accepted", accepted.sum());
+        counter(sb, "chat_connections_rejected_total", "Connections rejected because the server was full", rejectedFull.sum());
+        counter(sb, "chat_idle_timeouts_total", "Connections closed after the idle timeout", idleTimeouts.sum());
+        counter(sb, "chat_disconnects_total", "Client disconnects", disconnects.sum());
+
+        sb.append("# HELP chat_intent_hits_total Replies generated per intent\n");
+        sb.append("# TYPE chat_intent_hits_total counter\n");
+        getIntentHits().forEach((name, hits) ->
+                sb.append("chat_intent_hits_total{intent=\"").append(escape(name)).append("\"} ").append(hits).append('\n'));
+
+        responseLatency.writePrometheus(sb, "chat_response_latency_seconds", "Time from reading a message to writing its reply");
+    }
+
+    static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    static void gauge(StringBuilder sb, String name, String help, double value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value))
+                .append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Fixed Prometheus-style buckets, one LongAdder each
+    static class Histogram {
+        private static final long[] BOUNDS_MICROS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+                100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+        // "le" labels in seconds, written as 0.0001 rather than 1.0E-4
+        private static final String[] LABELS = new String[BOUNDS_MICROS.length];
+
+        static {
+            for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+                LABELS[i] = BigDecimal.valueOf(BOUNDS_MICROS[i], 6).stripTrailingZeros().toPlainString();
+            }
+        }
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+        private final LongAdder sumMicros = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void recordNanos(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int i = 0;
+            while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumMicros.add(micros);
+        }
+
+        // Upper bound of the bucket holding the percentile, in milliseconds; -1 above the last bound
+        double percentileMillis(double percentile) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return BOUNDS_MICROS[i] / 1000.0;
+                }
+            }
+            return -1;
+        }
+
+        long count() {
+            long total = 0;
+            for (LongAdder bucket : buckets) {
+                total += bucket.sum();
+            }
+            return total;
+        }
+
+        String describe() {
+            long count = count();
+            if (count == 0) {
+                return "no samples";
+            }
+            return String.format("p50 <= %s, p99 <= %s, mean %.2f ms (n=%d)", bound(percentileMillis(50)),
+                    bound(percentileMillis(99)), sumMicros.sum() / 1000.0 / count, count);
+        }
+
+        private static String bound(double millis) {
+            return millis < 0 ? "> " + BOUNDS_MICROS[BOUNDS_MICROS.length - 1] / 1000 + " ms" : millis + " ms";
+        }
+
+        void writePrometheus(StringBuilder sb, String name, String help) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+                cumulative += buckets[i].sum();
+                sb.append(name).append("_bucket{le=\"").append(LABELS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += buckets[BOUNDS_MICROS.length].sum();
+            sb.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            sb.append(name).append("_sum ").append(sumMicros.sum() / 1e6).append('\n');
+            sb.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+}
@@ -0,0 +1,794 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Conversation state per client, kept across reconnects under a random 64-bit token.
+// Sessions are fixed-size records in direct ByteBuffers, so they cost the heap nothing but
+// an int per hash slot and two per record; 100k sessions take about 10 MB off-heap. The store
+// is split into segments by token, each with its own lock, record chunks, open-addressing
+// index, free list and list of detached sessions by last use. Detached sessions expire after
+// the TTL; once the store is at capacity, the least recently seen detached session of the
+// segment that needs a record makes room, or failing that the oldest one of another segment.
+public class SessionStore {
+    // Record layout
+    private static final int TOKEN = 0;
+    private static final int LAST_SEEN = 8;
+    private static final int CREATED = 16;
+    private static final int MESSAGES = 24;
+    private static final int NUMBER = 28;
+    private static final int INTENTS = 32;
+    private static final int INTENT_POS = 40;
+    private static final int FLAGS = 41;
+    private static final int ATTACHED = 42;
+    private static final int NAME_LENGTH = 43;
+    private static final int NAME = 44;
+    static final int RECORD_BYTES = 96;
+    static final int MAX_NAME_BYTES = RECORD_BYTES - NAME;
+    static final int RECENT_INTENTS = 4;
+
+    private static final byte AWAITING_NAME = 1;
+
+    private static final int SEGMENTS = 16;
+    private static final int CHUNK_RECORDS = 1024;
+    private static final int SNAPSHOT_MAGIC = 0x43535331; // "CSS1"
+
+    // Conversation state as read out of a record, for greetings and admin commands
+    public record Info(long token, int number, int messages, String name, List<String> recentIntents,
+                       long createdMillis, long lastSeenMillis) {}
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int capacity;
+    // Records holding a session over all segments; a freed slot stays with its segment for reuse
+    private final AtomicInteger slotsTaken = new AtomicInteger();
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    // Intent names are stored as 16-bit codes; 0 means none
+    private final ConcurrentHashMap<String, Short> intentCodes = new ConcurrentHashMap<>();
+    private final List<String> intentNames = new ArrayList<>(List.of(""));
+    private final ReentrantLock intentLock = new ReentrantLock();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public SessionStore(int capacity, long ttlMillis) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static SessionStore fromConfig(ServerConfig config) {
+        return new SessionStore(config.getSessionCapacity(), TimeUnit.MINUTES.toMillis(config.getSessionTtlMinutes()));
+    }
+
+    // A new attached session; 0 only if every record is held by a connected client
+    public long create(int number) {
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == 0);
+        long now = System.currentTimeMillis();
+        Segment home = segmentOf(token);
+        // The home segment has nothing detached to evict: free a record elsewhere and retry
+        for (int tries = 0; !home.insert(token, number, now); tries++) {
+            if (tries == SEGMENTS || !evictOldestDetached()) {
+                return 0;
+            }
+        }
+        created.increment();
+        return token;
+    }
+
+    // Evicts the least recently seen detached session of the whole store; false if there is none
+    private boolean evictOldestDetached() {
+        for (int tries = 0; tries < SEGMENTS; tries++) {
+            Segment victim = null;
+            long victimSeen = Long.MAX_VALUE;
+            for (Segment segment : segments) {
+                long seen = segment.oldestDetachedSeen();
+                if (seen < victimSeen) {
+                    victim = segment;
+                    victimSeen = seen;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            if (victim.evictOldest()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Attaches a client to an existing session; false if it expired or never existed
+    public boolean attach(long token) {
+        if (token == 0 || !segmentOf(token).attach(token, System.currentTimeMillis())) {
+            return false;
+        }
+        resumed.increment();
+        return true;
+    }
+
+    public void detach(long token) {
+        if (token != 0) {
+            segmentOf(token).detach(token, System.currentTimeMillis());
+        }
+    }
+
+    public void remove(long token) {
+        if (token != 0) {
+            segmentOf(token).remove(token);
+        }
+    }
+
+    // Per message: counts it and remembers its intent. askedName marks the reply as asking for
+    // the client's name; returns whether the previous reply did.
+    public boolean recordMessage(long token, String intent, boolean askedName) {
+        return segmentOf(token).recordMessage(token, codeOf(intent), askedName, System.currentTimeMillis());
+    }
+
+    public void setName(long token, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        // Cut at a character boundary
+        if (length > MAX_NAME_BYTES) {
+            length = MAX_NAME_BYTES;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        segmentOf(token).setName(token, bytes, length);
+    }
+
+    // Null when no name is known
+    public String getName(long token) {
+        return token == 0 ? null : segmentOf(token).getName(token);
+    }
+
+    public Info info(long token) {
+        return token == 0 ? null : segmentOf(token).info(token);
+    }
+
+    // Drops detached sessions not seen within the TTL
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        for (Segment segment : segments) {
+            expired.add(segment.sweep(cutoff));
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.offHeapBytes();
+        }
+        return bytes;
+    }
+
+    public long getResumed() {
+        return resumed.sum();
+    }
+
+    @Override
+    public String toString() {
+        long attached = 0;
+        for (Segment segment : segments) {
+            attached += segment.attachedCount();
+        }
+        return String.format("%d stored (%d attached), %d KB off-heap, %d created, %d resumed, %d expired, " +
+                        "%d evicted, TTL %d min", size(), attached, getOffHeapBytes() / 1024, created.sum(),
+                resumed.sum(), expired.sum(), evicted.sum(), TimeUnit.MILLISECONDS.toMinutes(ttlMillis));
+    }
+
+    public static String format(long token) {
+        return String.format("%016x", token);
+    }
+
+    // 0 for anything that is not a 16-digit hex token
+    public static long parse(CharSequence text) {
+        if (text.length() != 16) {
+            return 0;
+        }
+        long token = 0;
+        for (int i = 0; i < 16; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return 0;
+            }
+            token = token << 4 | digit;
+        }
+        return token;
+    }
+
+    private short codeOf(String intent) {
+        Short code = intentCodes.get(intent);
+        if (code != null) {
+            return code;
+        }
+        intentLock.lock();
+        try {
+            return intentCodes.computeIfAbsent(intent, k -> {
+                intentNames.add(k);
+                return (short) (intentNames.size() - 1);
+            });
+        } finally {
+            intentLock.unlock();
+        }
+    }
+
+    private String nameOf(short code) {
+        intentLock.lock();
+        try {
+            return code > 0 && code < intentNames.size() ? intentNames.get(code) : null;
+        } finally {
+            intentLock.unlock();
+        }
+    }
+
+    private Segment segmentOf(long token) {
+        return segments[(int) (mix(token) >>> 60)];
+    }
+
+    private static long mix(long token) {
+        long h = token * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    // Writes every live session to file (via a temporary file, so a crash leaves the old one)
+    public void snapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<String> names;
+            intentLock.lock();
+            try {
+                names = List.copyOf(intentNames);
+            } finally {
+                intentLock.unlock();
+            }
+            int headerBytes = 12;
+            List<byte[]> encoded = new ArrayList<>();
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                headerBytes += 2 + bytes.length;
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerBytes);
+            header.putInt(SNAPSHOT_MAGIC).putInt(RECORD_BYTES).putInt(names.size());
+            for (byte[] bytes : encoded) {
+                header.putShort((short) bytes.length).put(bytes);
+            }
+            channel.write(header.flip());
+            for (Segment segment : segments) {
+                segment.writeTo(channel);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Restores a snapshot into an empty store; expired sessions are skipped and none are attached
+    public int load(Path file) throws IOException {
+        int loaded = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocateDirect((int) Math.min(channel.size(), 1 << 20));
+            channel.read(in);
+            in.flip();
+            if (in.remaining() < 12 || in.getInt() != SNAPSHOT_MAGIC || in.getInt() != RECORD_BYTES) {
+                throw new IOException(file + " is not a session snapshot");
+            }
+            int count = in.getInt();
+            short[] remap = new short[count];
+            for (int i = 0; i < count; i++) {
+                in = fill(channel, in, 2);
+                byte[] name = new byte[in.getShort()];
+                in = fill(channel, in, name.length);
+                in.get(name);
+                remap[i] = i == 0 ? 0 : codeOf(new String(name, StandardCharsets.UTF_8));
+            }
+            long cutoff = System.currentTimeMillis() - ttlMillis;
+            while ((in = fill(channel, in, RECORD_BYTES)).remaining() >= RECORD_BYTES) {
+                int at = in.position();
+                long token = in.getLong(at + TOKEN);
+                if (token != 0 && in.getLong(at + LAST_SEEN) > cutoff) {
+                    for (int i = 0; i < RECENT_INTENTS; i++) {
+                        short code = in.getShort(at + INTENTS + 2 * i);
+                        in.putShort(at + INTENTS + 2 * i, code > 0 && code < count ? remap[code] : 0);
+                    }
+                    in.put(at + ATTACHED, (byte) 0);
+                    if (segmentOf(token).restore(in.slice(at, RECORD_BYTES))) {
+                        loaded++;
+                    }
+                }
+                in.position(at + RECORD_BYTES);
+            }
+        }
+        return loaded;
+    }
+
+    // Tops up the read buffer so that at least needed bytes are available, if the file has them
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer in, int needed) throws IOException {
+        if (in.remaining() >= needed) {
+            return in;
+        }
+        if (needed > in.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(needed);
+            larger.put(in);
+            in = larger;
+        } else {
+            in.compact();
+        }
+        while (in.position() < needed && channel.read(in) > 0) {
+            // keep reading
+        }
+        return in.flip();
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        // Slot + 1 per entry, 0 for empty; linear probing with backward-shift deletion
+        private int[] index = new int[2 * CHUNK_RECORDS];
+        private int[] free = new int[64];
+        private int freeCount;
+        private int allocated;
+        private int size;
+        // Detached sessions, least recently seen first, linked through their slots; -1 ends the list
+        private int[] older = new int[CHUNK_RECORDS];
+        private int[] newer = new int[CHUNK_RECORDS];
+        private int oldest = -1;
+        private int newest = -1;
+        private int detached;
+
+        private ByteBuffer chunk(int slot) {
+            return chunks.get(slot / CHUNK_RECORDS);
+        }
+
+        private int offset(int slot) {
+            return (slot % CHUNK_RECORDS) * RECORD_BYTES;
+        }
+
+        private long tokenAt(int slot) {
+            return chunk(slot).getLong(offset(slot) + TOKEN);
+        }
+
+        private long lastSeenAt(int slot) {
+            return chunk(slot).getLong(offset(slot) + LAST_SEEN);
+        }
+
+        private boolean isDetached(int slot) {
+            return chunk(slot).get(offset(slot) + ATTACHED) == 0;
+        }
+
+        // Queues a session that just became detached; only a restored one can be older than the newest
+        private void link(int slot) {
+            long seen = lastSeenAt(slot);
+            int after = newest;
+            while (after >= 0 && lastSeenAt(after) > seen) {
+                after = older[after];
+            }
+            int before = after < 0 ? oldest : newer[after];
+            older[slot] = after;
+            newer[slot] = before;
+            if (after < 0) {
+                oldest = slot;
+            } else {
+                newer[after] = slot;
+            }
+            if (before < 0) {
+                newest = slot;
+            } else {
+                older[before] = slot;
+            }
+            detached++;
+        }
+
+        private void unlink(int slot) {
+            int before = older[slot];
+            int after = newer[slot];
+            if (before < 0) {
+                oldest = after;
+            } else {
+                newer[before] = after;
+            }
+            if (after < 0) {
+                newest = before;
+            } else {
+                older[after] = before;
+            }
+            detached--;
+        }
+
+        // Slot of token, or -1
+        private int find(long token) {
+            int mask = index.length - 1;
+            for (int i = (int) mix(token) & mask; index[i] != 0; i = (i + 1) & mask) {
+                if (tokenAt(index[i] - 1) == token) {
+                    return index[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private void indexPut(long token, int slot) {
+            if (2 * (size + 1) > index.length) {
+                int[] old = index;
+                index = new int[old.length * 2];
+                for (int entry : old) {
+                    if (entry != 0) {
+                        place(tokenAt(entry - 1), entry);
+                    }
+                }
+            }
+            place(token, slot + 1);
+            size++;
+        }
+
+        private void place(long token, int entry) {
+            int mask = index.length - 1;
+            int i = (int) mix(token) & mask;
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = entry;
+        }
+
+        private void indexRemove(long token) {
+            int mask = index.length - 1;
+            int i = (int) mix(token) & mask;
+            while (index[i] != 0 && tokenAt(index[i] - 1) != token) {
+                i = (i + 1) & mask;
+            }
+            if (index[i] == 0) {
+                return;
+            }
+            index[i] = 0;
+            size--;
+            // Pull later entries of the probe run back over the hole
+            for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+                int home = (int) mix(tokenAt(index[j] - 1)) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    index[i] = index[j];
+                    index[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        // A free record slot, making room if the store is at capacity; -1 if all of this
+        // segment's sessions are attached
+        private int allocate() {
+            if (slotsTaken.getAndIncrement() >= capacity) {
+                slotsTaken.decrementAndGet();
+                if (oldest < 0) {
+                    return -1;
+                }
+                // The evicted session's record is taken over, so the count stays as it is
+                release(oldest);
+                evicted.increment();
+                return free[--freeCount];
+            }
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (allocated == chunks.size() * CHUNK_RECORDS) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_BYTES));
+                older = Arrays.copyOf(older, chunks.size() * CHUNK_RECORDS);
+                newer = Arrays.copyOf(newer, chunks.size() * CHUNK_RECORDS);
+            }
+            return allocated++;
+        }
+
+        // Frees a slot; the caller decides whether slotsTaken goes down
+        private void release(int slot) {
+            if (isDetached(slot)) {
+                unlink(slot);
+            }
+            indexRemove(tokenAt(slot));
+            chunk(slot).putLong(offset(slot) + TOKEN, 0);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[freeCount++] = slot;
+        }
+
+        boolean insert(long token, int number, long now) {
+            lock.lock();
+            try {
+                int slot = allocate();
+                if (slot < 0) {
+                    return false;
+                }
+                ByteBuffer chunk = chunk(slot);
+                int at = offset(slot);
+                for (int i = 0; i < RECORD_BYTES; i += 8) {
+                    chunk.putLong(at + i, 0);
+                }
+                chunk.putLong(at + TOKEN, token);
+                chunk.putLong(at + LAST_SEEN, now);
+                chunk.putLong(at + CREATED, now);
+                chunk.putInt(at + NUMBER, number);
+                chunk.put(at + ATTACHED, (byte) 1);
+                indexPut(token, slot);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean restore(ByteBuffer record) {
+            lock.lock();
+            try {
+                long token = record.getLong(TOKEN);
+                if (find(token) >= 0) {
+                    return false;
+                }
+                int slot = allocate();
+                if (slot < 0) {
+                    return false;
+                }
+                chunk(slot).put(offset(slot), record, 0, RECORD_BYTES);
+                indexPut(token, slot);
+                if (isDetached(slot)) {
+                    link(slot);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean attach(long token, long now) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot < 0) {
+                    return false;
+                }
+                ByteBuffer chunk = chunk(slot);
+                int at = offset(slot);
+                byte attached = chunk.get(at + ATTACHED);
+                if (attached == 0) {
+                    unlink(slot);
+                }
+                // A client reconnecting before its old connection timed out holds it twice for a while
+                chunk.put(at + ATTACHED, (byte) Math.min(attached + 1, Byte.MAX_VALUE));
+                chunk.putLong(at + LAST_SEEN, now);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void detach(long token, long now) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot >= 0) {
+                    ByteBuffer chunk = chunk(slot);
+                    int at = offset(slot);
+                    byte attached = chunk.get(at + ATTACHED);
+                    if (attached == 0) {
+                        unlink(slot);
+                    }
+                    chunk.put(at + ATTACHED, (byte) Math.max(attached - 1, 0));
+                    chunk.putLong(at + LAST_SEEN, now);
+                    if (attached <= 1) {
+                        link(slot);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(long token) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot >= 0) {
+                    release(slot);
+                    slotsTaken.decrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean recordMessage(long token, short intent, boolean askedName, long now) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot < 0) {
+                    return false;
+                }
+                ByteBuffer chunk = chunk(slot);
+                int at = offset(slot);
+                if (isDetached(slot)) {
+                    // Keeps the detached list in last-seen order
+                    unlink(slot);
+                    chunk.putLong(at + LAST_SEEN, now);
+                    link(slot);
+                }
+                chunk.putInt(at + MESSAGES, chunk.getInt(at + MESSAGES) + 1);
+                int pos = chunk.get(at + INTENT_POS);
+                chunk.putShort(at + INTENTS + 2 * pos, intent);
+                chunk.put(at + INTENT_POS, (byte) ((pos + 1) % RECENT_INTENTS));
+                chunk.putLong(at + LAST_SEEN, now);
+                byte flags = chunk.get(at + FLAGS);
+                chunk.put(at + FLAGS, (byte) (askedName ? flags | AWAITING_NAME : flags & ~AWAITING_NAME));
+                return (flags & AWAITING_NAME) != 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void setName(long token, byte[] name, int length) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot >= 0) {
+                    ByteBuffer chunk = chunk(slot);
+                    int at = offset(slot);
+                    chunk.put(at + NAME_LENGTH, (byte) length);
+                    chunk.put(at + NAME, name, 0, length);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String getName(long token) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                return slot < 0 ? null : readName(chunk(slot), offset(slot));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private String readName(ByteBuffer chunk, int at) {
+            int length = chunk.get(at + NAME_LENGTH);
+            if (length <= 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            chunk.get(at + NAME, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Info info(long token) {
+            lock.lock();
+            try {
+                int slot = find(token);
+                if (slot < 0) {
+                    return null;
+                }
+                ByteBuffer chunk = chunk(slot);
+                int at = offset(slot);
+                // Oldest first
+                List<String> recent = new ArrayList<>();
+                int pos = chunk.get(at + INTENT_POS);
+                for (int i = 0; i < RECENT_INTENTS; i++) {
+                    String name = nameOf(chunk.getShort(at + INTENTS + 2 * ((pos + i) % RECENT_INTENTS)));
+                    if (name != null) {
+                        recent.add(name);
+                    }
+                }
+                return new Info(token, chunk.getInt(at + NUMBER), chunk.getInt(at + MESSAGES),
+                        readName(chunk, at), recent, chunk.getLong(at + CREATED), chunk.getLong(at + LAST_SEEN));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int sweep(long cutoff) {
+            lock.lock();
+            try {
+                int removed = 0;
+                while (oldest >= 0 && lastSeenAt(oldest) < cutoff) {
+                    release(oldest);
+                    slotsTaken.decrementAndGet();
+                    removed++;
+                }
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Raw records, free ones included; load() skips those by their zero token
+        void writeTo(FileChannel channel) throws IOException {
+            lock.lock();
+            try {
+                for (int c = 0; c < chunks.size(); c++) {
+                    int records = Math.min(CHUNK_RECORDS, allocated - c * CHUNK_RECORDS);
+                    ByteBuffer slice = chunks.get(c).slice(0, records * RECORD_BYTES);
+                    while (slice.hasRemaining()) {
+                        channel.write(slice);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int attachedCount() {
+            lock.lock();
+            try {
+                return size - detached;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Last use of the segment's least recently seen detached session; Long.MAX_VALUE if none
+        long oldestDetachedSeen() {
+            lock.lock();
+            try {
+                return oldest < 0 ? Long.MAX_VALUE : lastSeenAt(oldest);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Gives the least recently seen detached session's record back to the store
+        boolean evictOldest() {
+            lock.lock();
+            try {
+                if (oldest < 0) {
+                    return false;
+                }
+                release(oldest);
+                slotsTaken.decrementAndGet();
+                evicted.increment();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long offHeapBytes() {
+            lock.lock();
+            try {
+                return (long) chunks.size() * CHUNK_RECORDS * RECORD_BYTES;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
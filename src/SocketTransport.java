@@ -0,0 +1,116 @@
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SocketTransport implements ClientTransport {
+    static final int READ_BUFFER_SIZE = 8192;
+    // Read buffer plus the decoder's initial buffers
+    static final int BUFFER_BYTES = READ_BUFFER_SIZE + LineDecoder.INITIAL_FOOTPRINT;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final LongAdder bytesIn;
+    private final BufferPool pool;
+    // Reader thread only: raw bytes are decoded here rather than by a Reader, so the
+    // stream can switch to binary frames right after the negotiation line
+    private ByteBuffer readBuffer;
+    private final LineDecoder decoder = new LineDecoder();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Coalescing buffer for batched writes, guarded by writeLock
+    private byte[] batch = new byte[0];
+
+    // bytesIn counts what is read off the socket, before decoding. The read buffer is
+    // leased from a heap pool: socket streams can only read into arrays.
+    public SocketTransport(Socket socket, LongAdder bytesIn, BufferPool pool) throws IOException {
+        this.socket = socket;
+        this.in = socket.getInputStream();
+        this.out = socket.getOutputStream();
+        this.bytesIn = bytesIn;
+        this.pool = pool;
+        this.readBuffer = pool.acquire();
+    }
+
+    // Blocks for one read and hands every line it completes to the sink, as a view that is
+    // only valid during the call. Returns false at end of stream.
+    public boolean read(LineDecoder.LineSink sink) throws IOException {
+        int n = in.read(readBuffer.array(), readBuffer.arrayOffset(), readBuffer.capacity());
+        if (n < 0) {
+            return false;
+        }
+        bytesIn.add(n);
+        readBuffer.clear().limit(n);
+        decoder.decodeInPlace(readBuffer, sink);
+        return true;
+    }
+
+    // Reader thread, once it has stopped reading
+    public void release() {
+        ByteBuffer buf = readBuffer;
+        readBuffer = null;
+        pool.release(buf);
+    }
+
+    // A ReentrantLock rather than synchronized: a virtual-thread writer blocked on a slow
+    // socket inside a monitor would pin its carrier thread and stall every other writer
+    @Override
+    public void write(EncodedLine line) throws IOException {
+        writeLock.lock();
+        try {
+            line.writeTo(out);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(List<EncodedLine> lines) throws IOException {
+        if (lines.size() == 1) {
+            write(lines.get(0));
+            return;
+        }
+        int total = 0;
+        for (EncodedLine line : lines) {
+            total += line.length();
+        }
+        writeLock.lock();
+        try {
+            if (batch.length < total) {
+                batch = new byte[Math.max(total, batch.length * 2)];
+            }
+            int offset = 0;
+            for (EncodedLine line : lines) {
+                offset = line.copyTo(batch, offset);
+            }
+            out.write(batch, 0, offset);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // The reader blocking on its own client's socket is the backpressure this engine relies on
+    @Override
+    public boolean writesInline() {
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return socket.getRemoteSocketAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Also unblocks a reader parked in read()
+        socket.close();
+    }
+}
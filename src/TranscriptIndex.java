@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// In-memory inverted index over the transcript journal, fed by the journal's follow thread:
+// first the history, then new records shortly after they are appended.
+//
+// Client IDs start again at 1 whenever the server starts, so clients are keyed by run and ID.
+// A run begins at each "Server Started" record and runs are numbered from 1 in journal order;
+// records before the first one belong to run 0.
+// Records are numbered in append order; per record only its time and location are kept,
+// the text itself stays on disk and is read back a page at a time.
+public class TranscriptIndex implements TranscriptJournal.RecordVisitor {
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final Pattern CLIENT = Pattern.compile("(\\d+)(?:@(\\d+))?");
+
+    // One search result and the run it belongs to
+    public record Hit(int run, TranscriptJournal.Entry entry) {}
+
+    private final TranscriptJournal journal;
+    private final Map<String, IntList> terms = new HashMap<>();
+    // Keyed by key(run, clientId)
+    private final Map<Long, IntList> clients = new HashMap<>();
+    private final Map<String, Set<Long>> clientsByIp = new HashMap<>();
+    // Ordinal of each run's first record; run n starts at runStarts.get(n - 1)
+    private final IntList runStarts = new IntList();
+    private volatile boolean caughtUp;
+    private long[] times = new long[1024];
+    private int[] segments = new int[1024];
+    private int[] offsets = new int[1024];
+    private int size;
+    // Lowercased term being looked up, reused so only a term seen for the first time becomes a String
+    private final CharView term = new CharView(MAX_TERM_LENGTH);
+
+    public TranscriptIndex(TranscriptJournal journal) {
+        this.journal = journal;
+        journal.attach(this);
+    }
+
+    @Override
+    public synchronized void visit(long timeMillis, TranscriptJournal.Kind kind, int clientId, CharSequence text,
+                                   int segment, int offset) {
+        int ordinal = size;
+        if (ordinal == times.length) {
+            times = Arrays.copyOf(times, ordinal * 2);
+            segments = Arrays.copyOf(segments, ordinal * 2);
+            offsets = Arrays.copyOf(offsets, ordinal * 2);
+        }
+        times[ordinal] = timeMillis;
+        segments[ordinal] = segment;
+        offsets[ordinal] = offset;
+        size++;
+
+        if (kind == TranscriptJournal.Kind.SERVER
+                && CharView.startsWithIgnoreCase(text, TranscriptJournal.SERVER_STARTED)) {
+            runStarts.add(ordinal);
+        }
+        long key = key(runStarts.size, clientId);
+        if (clientId > 0) {
+            clients.computeIfAbsent(key, k -> new IntList()).add(ordinal);
+        }
+        if (kind == TranscriptJournal.Kind.CONNECT) {
+            clientsByIp.computeIfAbsent(hostOf(text.toString()), k -> new LinkedHashSet<>()).add(key);
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    term.clear();
+                    for (int j = start; j < i; j++) {
+                        term.append(Character.toLowerCase(text.charAt(j)));
+                    }
+                    IntList postings = terms.get(term);
+                    if (postings == null) {
+                        postings = new IntList();
+                        terms.put(term.toString(), postings);
+                    }
+                    // A term repeated within one record is posted once
+                    if (postings.size == 0 || postings.get(postings.size - 1) != ordinal) {
+                        postings.add(ordinal);
+                    }
+                }
+                start = -1;
+            }
+        }
+    }
+
+    @Override
+    public void caughtUp() {
+        caughtUp = true;
+    }
+
+    // False while the history from before the server started is still being indexed
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    private static long key(int run, int clientId) {
+        return (long) run << 32 | clientId & 0xFFFFFFFFL;
+    }
+
+    // "/127.0.0.1:5000" -> "127.0.0.1", "/[0:0:0:0:0:0:0:1]:5000" -> "0:0:0:0:0:0:0:1"
+    static String hostOf(String address) {
+        int slash = address.indexOf('/');
+        String host = slash >= 0 ? address.substring(slash + 1) : address;
+        int colon = host.lastIndexOf(':');
+        if (host.startsWith("[")) {
+            int close = host.indexOf(']');
+            host = close > 0 ? host.substring(1, close) : host.substring(1);
+        } else if (colon > 0 && (host.indexOf(':') == colon || ClientRegistry.parseLiteral(host) == null)) {
+            // One colon is IPv4 with a port; older journals wrote IPv6 unbracketed, port last
+            host = host.substring(0, colon);
+        }
+        return normalise(host);
+    }
+
+    // The address as InetAddress prints it, so "::1" and "0:0:0:0:0:0:0:1" are the same key
+    static String normalise(String host) {
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        InetAddress address = ClientRegistry.parseLiteral(host);
+        return address != null ? address.getHostAddress() : host;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int termCount() {
+        return terms.size();
+    }
+
+    public synchronized int runCount() {
+        return runStarts.size;
+    }
+
+    // Run of the record with the given ordinal; caller holds the lock
+    private int runOf(int ordinal) {
+        return runStarts.lowerBound(ordinal + 1);
+    }
+
+    // Matches newest first, restricted to [fromMillis, toMillis). A client is "<id>" in the
+    // latest run that had one, or "<id>@<run>".
+    public synchronized Cursor search(String target, long fromMillis, long toMillis) {
+        int lo = lowerBound(fromMillis);
+        int hi = lowerBound(toMillis);
+
+        List<Postings> parts = new ArrayList<>();
+        Matcher client = CLIENT.matcher(target);
+        if (client.matches()) {
+            int id;
+            int run;
+            try {
+                id = Integer.parseInt(client.group(1));
+                run = client.group(2) != null ? Integer.parseInt(client.group(2)) : -1;
+            } catch (NumberFormatException e) {
+                return new Cursor(new UnionPostings(parts));
+            }
+            IntList list = null;
+            if (run >= 0) {
+                list = clients.get(key(run, id));
+            } else {
+                for (int r = runStarts.size; r >= 0 && list == null; r--) {
+                    list = clients.get(key(r, id));
+                }
+            }
+            if (list != null) {
+                parts.add(new ListPostings(list, lo, hi));
+            }
+            return new Cursor(new UnionPostings(parts));
+        }
+        Set<Long> keys = clientsByIp.get(normalise(target));
+        if (keys != null) {
+            for (long key : keys) {
+                IntList list = clients.get(key);
+                if (list != null) {
+                    parts.add(new ListPostings(list, lo, hi));
+                }
+            }
+            return new Cursor(new UnionPostings(parts));
+        }
+
+        List<ListPostings> all = new ArrayList<>();
+        for (String term : target.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            IntList list = terms.get(term);
+            if (list == null) {
+                return new Cursor(new UnionPostings(parts));
+            }
+            all.add(new ListPostings(list, lo, hi));
+        }
+        return new Cursor(all.isEmpty() ? new UnionPostings(parts) : new IntersectPostings(all));
+    }
+
+    // Time range arguments of @search: "30m", "2h", "7d" (the last N), "HH:mm" (today),
+    // "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm". One argument is a start, two are start and end.
+    public static long[] parseRange(List<String> args) {
+        long[] range = {Long.MIN_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < args.size() && i < 2; i++) {
+            range[i] = parseTime(args.get(i));
+        }
+        return range;
+    }
+
+    private static long parseTime(String arg) {
+        long now = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        if (arg.matches("\\d+[mhd]")) {
+            long amount = Long.parseLong(arg.substring(0, arg.length() - 1));
+            long unit = switch (arg.charAt(arg.length() - 1)) {
+                case 'm' -> 60_000L;
+                case 'h' -> 3_600_000L;
+                default -> 86_400_000L;
+            };
+            return now - amount * unit;
+        }
+        try {
+            if (arg.matches("\\d{1,2}:\\d{2}")) {
+                return LocalDate.now(zone).atTime(LocalTime.parse(arg.length() == 4 ? "0" + arg : arg))
+                        .atZone(zone).toInstant().toEpochMilli();
+            }
+            if (arg.contains("T")) {
+                return LocalDateTime.parse(arg).atZone(zone).toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(arg).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time: " + arg);
+        }
+    }
+
+    private int lowerBound(long millis) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Streams results a page at a time; only the current page is materialised
+    public class Cursor {
+        private final Postings postings;
+        private boolean exhausted;
+
+        private Cursor(Postings postings) {
+            this.postings = postings;
+        }
+
+        public boolean hasMore() {
+            return !exhausted;
+        }
+
+        public List<Hit> nextPage(int pageSize) throws IOException {
+            // Group the page by segment so each segment file is opened once
+            TreeMap<Integer, List<Integer>> bySegment = new TreeMap<>();
+            List<Integer> ordinals = new ArrayList<>(pageSize);
+            synchronized (TranscriptIndex.this) {
+                while (ordinals.size() < pageSize) {
+                    int ordinal = postings.next();
+                    if (ordinal < 0) {
+                        exhausted = true;
+                        break;
+                    }
+                    ordinals.add(ordinal);
+                    bySegment.computeIfAbsent(segments[ordinal], k -> new ArrayList<>()).add(offsets[ordinal]);
+                }
+                if (!exhausted && postings.peek() < 0) {
+                    exhausted = true;
+                }
+            }
+
+            Map<Long, TranscriptJournal.Entry> found = new HashMap<>();
+            for (Map.Entry<Integer, List<Integer>> e : bySegment.entrySet()) {
+                int[] sorted = e.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+                List<TranscriptJournal.Entry> entries = journal.read(e.getKey(), sorted);
+                for (int i = 0; i < entries.size() && i < sorted.length; i++) {
+                    found.put(((long) e.getKey() << 32) | sorted[i], entries.get(i));
+                }
+            }
+            List<Hit> page = new ArrayList<>(ordinals.size());
+            synchronized (TranscriptIndex.this) {
+                for (int ordinal : ordinals) {
+                    TranscriptJournal.Entry entry = found.get(((long) segments[ordinal] << 32) | offsets[ordinal]);
+                    if (entry != null) {
+                        page.add(new Hit(runOf(ordinal), entry));
+                    }
+                }
+            }
+            return page;
+        }
+    }
+
+    // Descending ordinal streams; all access happens under the index lock
+    private interface Postings {
+        int next();
+
+        int peek();
+    }
+
+    private static class ListPostings implements Postings {
+        private final IntList list;
+        private final int floor;
+        private int index;
+
+        ListPostings(IntList list, int lo, int hi) {
+            this.list = list;
+            this.floor = list.lowerBound(lo);
+            this.index = list.lowerBound(hi) - 1;
+        }
+
+        @Override
+        public int next() {
+            return index >= floor ? list.get(index--) : -1;
+        }
+
+        @Override
+        public int peek() {
+            return index >= floor ? list.get(index) : -1;
+        }
+
+        boolean contains(int ordinal) {
+            int i = list.lowerBound(ordinal);
+            return i < list.size && i >= floor && list.get(i) == ordinal;
+        }
+    }
+
+    private static class UnionPostings implements Postings {
+        private final List<? extends Postings> parts;
+
+        UnionPostings(List<? extends Postings> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public int next() {
+            Postings best = null;
+            for (Postings p : parts) {
+                if (p.peek() >= 0 && (best == null || p.peek() > best.peek())) {
+                    best = p;
+                }
+            }
+            return best == null ? -1 : best.next();
+        }
+
+        @Override
+        public int peek() {
+            int best = -1;
+            for (Postings p : parts) {
+                best = Math.max(best, p.peek());
+            }
+            return best;
+        }
+    }
+
+    // Walks the shortest list and probes the others
+    private static class IntersectPostings implements Postings {
+        private final ListPostings lead;
+        private final List<ListPostings> others;
+        private int pending = -2;
+
+        IntersectPostings(List<ListPostings> all) {
+            all.sort(Comparator.comparingInt(p -> p.list.size));
+            this.lead = all.get(0);
+            this.others = all.subList(1, all.size());
+        }
+
+        @Override
+        public int next() {
+            int result = peek();
+            pending = -2;
+            return result;
+        }
+
+        @Override
+        public int peek() {
+            if (pending != -2) {
+                return pending;
+            }
+            int candidate;
+            search:
+            while ((candidate = lead.next()) >= 0) {
+                for (ListPostings other : others) {
+                    if (!other.contains(candidate)) {
+                        continue search;
+                    }
+                }
+                break;
+            }
+            pending = candidate;
+            return pending;
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        // First index whose value is >= value; values are ascending
+        int lowerBound(int value) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
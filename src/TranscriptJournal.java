@@ -0,0 +1,673 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Append-only chat transcript. Records are written into a memory-mapped, preallocated
+// segment file; a sync thread forces dirty pages to disk every few hundred milliseconds
+// (group commit), full segments are rotated and gzip-compressed in the background.
+// Appending only encodes the record and copies it into the segment; an attached visitor is
+// fed by a thread of its own, which reads the records back from the segments.
+//
+// Record format, one per line: <epochMillis>\t<kind>\t<clientId>\t<text>
+// with \\, \t and \n escaped in text. Unused space at the end of a segment is zero-filled.
+public class TranscriptJournal implements Closeable {
+    public enum Kind { SERVER, CONNECT, MESSAGE, RESPONSE, DISCONNECT, KICK, BROADCAST }
+
+    public record Entry(long timeMillis, Kind kind, int clientId, String text) {}
+
+    // Text of the SERVER record that opens a run; client IDs start again after it
+    public static final String SERVER_STARTED = "Server Started";
+
+    private static final String PREFIX = "transcript-";
+    private static final String SUFFIX = ".log";
+    private static final String COMPRESSED = ".log.gz";
+    // Bytes of the active segment copied out per read by the follow thread
+    private static final int FOLLOW_CHUNK_BYTES = 64 * 1024;
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long syncMillis;
+    private final ScheduledExecutorService syncer;
+    private final ExecutorService background;
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int segment;
+    private int position;
+    private int syncedPosition;
+    // Records that did not fit in an empty segment and were left out
+    private long droppedRecords;
+    private boolean closed;
+    private ScheduledExecutorService follower;
+    // Set once by attach(), then used by the follow thread only, as is where it has got to
+    private RecordVisitor visitor;
+    private int followSegment = -1;
+    private int followOffset;
+    private boolean caughtUp;
+    private byte[] followBuffer = new byte[FOLLOW_CHUNK_BYTES];
+    // Encoding buffer for append(), guarded by the lock
+    private byte[] record = new byte[256];
+    private static final byte[][] KIND_NAMES = new byte[Kind.values().length][];
+
+    static {
+        for (Kind kind : Kind.values()) {
+            KIND_NAMES[kind.ordinal()] = kind.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public TranscriptJournal(Path dir, int segmentBytes, long syncMillis) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.syncMillis = syncMillis;
+        Files.createDirectories(dir);
+
+        this.background = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "TranscriptBackground");
+            t.setDaemon(true);
+            return t;
+        });
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TranscriptSync");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Resume the newest uncompressed segment; older ones were left by a crash mid-rotation
+        List<Integer> open = new ArrayList<>();
+        for (Integer n : listSegments()) {
+            if (Files.exists(segmentPath(n))) {
+                open.add(n);
+            }
+            segment = Math.max(segment, n);
+        }
+        for (int n : open) {
+            if (n != segment) {
+                background.execute(() -> compress(n));
+            }
+        }
+        if (open.contains(segment)) {
+            openSegment(segment, true);
+        } else {
+            openSegment(segment + 1, false);
+        }
+
+        syncer.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static TranscriptJournal fromConfig(ServerConfig config) throws IOException {
+        return new TranscriptJournal(Path.of(config.getJournalDir()),
+                config.getJournalSegmentBytes(), config.getJournalSyncMillis());
+    }
+
+    private void openSegment(int n, boolean resume) throws IOException {
+        segment = n;
+        channel = FileChannel.open(segmentPath(n), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        position = 0;
+        if (resume) {
+            while (position < segmentBytes && map.get(position) != 0) {
+                position++;
+            }
+        }
+        syncedPosition = position;
+    }
+
+    // Hands the visitor every record, the existing ones first, on a thread of its own. New
+    // records reach it within a sync interval; appending never waits for it.
+    public synchronized void attach(RecordVisitor visitor) {
+        if (follower != null) {
+            throw new IllegalStateException("A visitor is already attached");
+        }
+        this.visitor = visitor;
+        follower = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TranscriptFollow");
+            t.setDaemon(true);
+            return t;
+        });
+        follower.scheduleWithFixedDelay(this::follow, 0, syncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Follow thread: catches the visitor up with everything appended so far
+    private void follow() {
+        try {
+            if (followSegment < 0) {
+                List<Integer> segments = listSegments();
+                followSegment = segments.isEmpty() ? getSegment() : segments.get(0);
+            }
+            while (true) {
+                int active;
+                int end;
+                MappedByteBuffer current;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    active = segment;
+                    end = position;
+                    current = map;
+                }
+                if (followSegment == active) {
+                    followMapped(current, end);
+                    break;
+                }
+                // Rotated since the last look: the rest of the segment is read from its file
+                followFile(followSegment, followOffset);
+                followSegment++;
+                followOffset = 0;
+            }
+            if (!caughtUp) {
+                caughtUp = true;
+                visitor.caughtUp();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Tried again on the next tick, from the same record
+        }
+    }
+
+    // Records of the active segment, read straight from the mapping; end is a record boundary
+    private void followMapped(MappedByteBuffer source, int end) {
+        int chunk = FOLLOW_CHUNK_BYTES;
+        while (followOffset < end) {
+            int length = Math.min(end - followOffset, chunk);
+            if (followBuffer.length < length) {
+                followBuffer = new byte[length];
+            }
+            source.get(followOffset, followBuffer, 0, length);
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (followBuffer[i] == '\n') {
+                    visit(new String(followBuffer, start, i - start, StandardCharsets.UTF_8), followSegment,
+                            followOffset + start);
+                    start = i + 1;
+                }
+            }
+            if (start == 0 && length == end - followOffset) {
+                // No record end before the end of the data: a torn write left by a crash
+                return;
+            }
+            // A record longer than the chunk is read again with a bigger one
+            chunk = start == 0 ? chunk * 2 : FOLLOW_CHUNK_BYTES;
+            followOffset += start;
+        }
+    }
+
+    private void followFile(int n, int offset) throws IOException {
+        InputStream raw = openSegmentStream(n, Long.MAX_VALUE);
+        if (raw == null) {
+            return;
+        }
+        try (LineInput in = new LineInput(raw)) {
+            in.skipTo(offset);
+            int start = in.position();
+            String line;
+            while ((line = in.readLine()) != null) {
+                visit(line, n, start);
+                start = in.position();
+            }
+        }
+    }
+
+    private void visit(String line, int n, int offset) {
+        Entry entry = decode(line);
+        if (entry != null) {
+            visitor.visit(entry.timeMillis(), entry.kind(), entry.clientId(), entry.text(), n, offset);
+        }
+    }
+
+    // text may be a view that is refilled after the call; it is copied into the segment
+    public void append(Kind kind, int clientId, CharSequence text) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int length = encode(now, kind, clientId, text);
+            if (length > segmentBytes) {
+                droppedRecords++;
+                return;
+            }
+            try {
+                if (position + length > segmentBytes) {
+                    rotate();
+                }
+                map.put(position, record, 0, length);
+                position += length;
+            } catch (IOException e) {
+                // Keep chatting even if the disk is unavailable; the record is lost
+            }
+        }
+    }
+
+    // Writes the record as UTF-8 into the encoding buffer and returns its length. Caller holds the lock.
+    private int encode(long time, Kind kind, int clientId, CharSequence text) {
+        // Three bytes per char covers escapes (two) and surrogate pairs (four per two chars)
+        if (record.length < 64 + 3 * text.length()) {
+            record = new byte[Math.max(64 + 3 * text.length(), record.length * 2)];
+        }
+        byte[] out = record;
+        int n = putDecimal(out, 0, time);
+        out[n++] = '\t';
+        byte[] name = KIND_NAMES[kind.ordinal()];
+        System.arraycopy(name, 0, out, n, name.length);
+        n += name.length;
+        out[n++] = '\t';
+        n = putDecimal(out, n, clientId);
+        out[n++] = '\t';
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '\\' -> {
+                        out[n++] = '\\';
+                        out[n++] = '\\';
+                    }
+                    case '\t' -> {
+                        out[n++] = '\\';
+                        out[n++] = 't';
+                    }
+                    case '\n' -> {
+                        out[n++] = '\\';
+                        out[n++] = 'n';
+                    }
+                    case '\0' -> { }
+                    default -> out[n++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | cp >> 18);
+                out[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired, as String.getBytes would encode it
+                out[n++] = '?';
+            } else {
+                out[n++] = (byte) (0xE0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        out[n++] = '\n';
+        return n;
+    }
+
+    private static int putDecimal(byte[] out, int n, long value) {
+        if (value < 0) {
+            out[n++] = '-';
+            value = -value;
+        }
+        int end = n + 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            end++;
+        }
+        for (int i = end - 1; i >= n; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    static Entry decode(String line) {
+        String[] cols = line.split("\t", 4);
+        if (cols.length < 4) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(cols[3].length());
+        for (int i = 0; i < cols[3].length(); i++) {
+            char c = cols[3].charAt(i);
+            if (c == '\\' && i + 1 < cols[3].length()) {
+                char next = cols[3].charAt(++i);
+                text.append(next == 'n' ? '\n' : next == 't' ? '\t' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        try {
+            return new Entry(Long.parseLong(cols[0]), Kind.valueOf(cols[1]), Integer.parseInt(cols[2]), text.toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Caller holds the lock. Only the swap happens here; forcing, closing and compressing the
+    // full segment is left to the background thread so appends do not wait on the disk.
+    private void rotate() throws IOException {
+        MappedByteBuffer fullMap = map;
+        FileChannel fullChannel = channel;
+        int fullSegment = segment;
+        openSegment(segment + 1, false);
+        background.execute(() -> {
+            try {
+                fullMap.force();
+                fullChannel.close();
+            } catch (IOException | UncheckedIOException e) {
+                // Compressed all the same; the mapping still holds every record
+            }
+            compress(fullSegment);
+        });
+    }
+
+    private void compress(int n) {
+        Path source = segmentPath(n);
+        Path target = compressedPath(n);
+        Path partial = dir.resolve(target.getFileName() + ".tmp");
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial))) {
+            byte[] buf = new byte[64 * 1024];
+            int read;
+            copy:
+            while ((read = in.read(buf)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buf[i] == 0) {
+                        out.write(buf, 0, i);
+                        break copy;
+                    }
+                }
+                out.write(buf, 0, read);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException ignored) {
+            // Still mapped on some platforms; the .gz copy is authoritative from now on
+        }
+    }
+
+    // Group commit: one force() covers every record appended since the last one
+    public void sync() {
+        int from;
+        int to;
+        MappedByteBuffer current;
+        synchronized (this) {
+            if (closed || position == syncedPosition) {
+                return;
+            }
+            from = syncedPosition;
+            to = position;
+            current = map;
+            syncedPosition = position;
+        }
+        current.force(from, to - from);
+    }
+
+    public interface RecordVisitor {
+        void visit(long timeMillis, Kind kind, int clientId, CharSequence text, int segment, int offset);
+
+        // An attached visitor has seen every record that existed when it was attached
+        default void caughtUp() {
+        }
+    }
+
+    // Replays every record, oldest first, on the calling thread
+    public void replay(Consumer<Entry> consumer) throws IOException {
+        scan((time, kind, clientId, text, segment, offset) ->
+                consumer.accept(new Entry(time, kind, clientId, text.toString())));
+    }
+
+    // Like replay, but also reports where each record starts
+    public void scan(RecordVisitor visitor) throws IOException {
+        sync();
+        int active;
+        int end;
+        synchronized (this) {
+            active = segment;
+            end = position;
+        }
+        for (int n : listSegments()) {
+            if (n > active) {
+                continue;
+            }
+            InputStream raw = openSegmentStream(n, n == active ? end : Long.MAX_VALUE);
+            if (raw == null) {
+                continue;
+            }
+            try (LineInput in = new LineInput(raw)) {
+                int offset = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    Entry entry = decode(line);
+                    if (entry != null) {
+                        visitor.visit(entry.timeMillis(), entry.kind(), entry.clientId(), entry.text(), n, offset);
+                    }
+                    offset = in.position();
+                }
+            }
+        }
+    }
+
+    // Reads the records starting at the given offsets of one segment, offsets ascending
+    public List<Entry> read(int segment, int[] offsets) throws IOException {
+        sync();
+        List<Entry> entries = new ArrayList<>(offsets.length);
+        InputStream raw = openSegmentStream(segment, Long.MAX_VALUE);
+        if (raw == null) {
+            return entries;
+        }
+        try (LineInput in = new LineInput(raw)) {
+            for (int offset : offsets) {
+                in.skipTo(offset);
+                String line = in.readLine();
+                Entry entry = line == null ? null : decode(line);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private InputStream openSegmentStream(int n, long limit) throws IOException {
+        // The plain file is only deleted once its .gz copy is complete
+        try {
+            InputStream plain = Files.newInputStream(segmentPath(n));
+            return limit == Long.MAX_VALUE ? plain : new BoundedInputStream(plain, limit);
+        } catch (NoSuchFileException e) {
+            if (!Files.exists(compressedPath(n))) {
+                return null;
+            }
+            return new GZIPInputStream(Files.newInputStream(compressedPath(n)));
+        }
+    }
+
+    public Future<?> exportAsync(Path target, Consumer<String> onDone) {
+        return background.submit(() -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                replay(entry -> {
+                    try {
+                        writer.write(format(entry));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                onDone.accept(null);
+            } catch (IOException | UncheckedIOException e) {
+                onDone.accept(e.getMessage());
+            }
+        });
+    }
+
+    public static String format(Entry e) {
+        String body = switch (e.kind()) {
+            case SERVER -> e.text();
+            case CONNECT -> "Client " + e.clientId() + " connected from : " + e.text();
+            case MESSAGE -> "Client " + e.clientId() + " says: " + e.text();
+            case RESPONSE -> "Bot -> Client " + e.clientId() + ": " + e.text();
+            case DISCONNECT -> "Client " + e.clientId() + " disconnected";
+            case KICK -> "Kicked client: " + e.text();
+            case BROADCAST -> "Broadcast: " + e.text();
+        };
+        return "[" + TIMESTAMP.format(Instant.ofEpochMilli(e.timeMillis())) + "] " + body;
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*")) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                int end = name.indexOf('.');
+                try {
+                    int n = Integer.parseInt(name.substring(PREFIX.length(), end));
+                    if (!numbers.contains(n)) {
+                        numbers.add(n);
+                    }
+                } catch (NumberFormatException | StringIndexOutOfBoundsException ignored) {
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentPath(int n) {
+        return dir.resolve(PREFIX + String.format("%06d", n) + SUFFIX);
+    }
+
+    private Path compressedPath(int n) {
+        return dir.resolve(PREFIX + String.format("%06d", n) + COMPRESSED);
+    }
+
+    public synchronized int getSegment() {
+        return segment;
+    }
+
+    public synchronized long getUnsyncedBytes() {
+        return position - syncedPosition;
+    }
+
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            map.force();
+            channel.close();
+        }
+        syncer.shutdown();
+        background.shutdown();
+        synchronized (this) {
+            if (follower != null) {
+                follower.shutdown();
+            }
+        }
+    }
+
+    // Byte-oriented line reader that tracks the offset of the next line; stops at the zero fill
+    private static class LineInput implements Closeable {
+        private final InputStream in;
+        private byte[] line = new byte[256];
+        private int position;
+
+        LineInput(InputStream in) {
+            this.in = new BufferedInputStream(in, 64 * 1024);
+        }
+
+        String readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = in.read()) > 0 && b != '\n') {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = (byte) b;
+            }
+            position += length + (b == '\n' ? 1 : 0);
+            if (b <= 0 && length == 0) {
+                return null;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        void skipTo(int offset) throws IOException {
+            while (position < offset) {
+                long skipped = in.skip(offset - position);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        return;
+                    }
+                    skipped = 1;
+                }
+                position += (int) skipped;
+            }
+        }
+
+        int position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Binary framing, negotiated per connection: the client sends MARKER as its first line, the
+// server answers with MARKER as a text line, and from then on both sides send frames of
+// [type: 1 byte][payload length: 4 bytes, big-endian][payload: UTF-8]. A frame carries a
+// whole message, line breaks included. Clients that never send MARKER stay on text lines.
+// CONTROL frames carry the heartbeat: either side answers a PING payload with PONG.
+public final class WireFrame {
+    public static final String MARKER = "__FRAMED__";
+
+    public static final byte MESSAGE = 1;
+    public static final byte CONTROL = 2;
+    public static final byte DISCONNECT = 3;
+
+    // Sent as a message in either protocol: a client asks for its session token with SESSION,
+    // or resumes an earlier session with "SESSION <token>"; the server answers "SESSION <token>"
+    public static final String SESSION = "__SESSION__";
+
+    public static final String PING = "ping";
+    public static final String PONG = "pong";
+
+    public static final int HEADER_BYTES = 5;
+    public static final int MAX_PAYLOAD = 1024 * 1024;
+
+    private WireFrame() {
+    }
+
+    public static byte[] encode(byte type, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[HEADER_BYTES + payload.length];
+        ByteBuffer.wrap(frame).put(type).putInt(payload.length).put(payload);
+        return frame;
+    }
+
+    static boolean isKnownType(byte type) {
+        return type == MESSAGE || type == CONTROL || type == DISCONNECT;
+    }
+}
@@ -1,13 +1,86 @@
 import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
 
+// Usage: java mainClient [--headless] [--sessions N] [--host H] [--port N] [--script file] [--seconds N]
+// Without arguments the number of clients is asked for in a dialog: one opens ClientGUI,
+// more run as sessions of one ClientRuntime shown in a single ClientViewer window. Headless,
+// the sessions run the script (chat.client.script, or a built-in one) and a summary is printed
+// every chat.client.reportSeconds.
 public class mainClient {
-    public static void main(String[] args) {
-        String input = JOptionPane.showInputDialog("Masukkan jumlah client:");
-        int jumlahClient = Integer.parseInt(input);
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0 && !GraphicsEnvironment.isHeadless()) {
+            String input = JOptionPane.showInputDialog("Masukkan jumlah client:");
+            int jumlahClient;
+            try {
+                jumlahClient = Integer.parseInt(input.trim());
+            } catch (NullPointerException | NumberFormatException e) {
+                return;
+            }
+            if (jumlahClient <= 1) {
+                SwingUtilities.invokeLater(() -> new ClientGUI("localhost"));
+                return;
+            }
+            int port;
+            try {
+                port = Integer.parseInt(JOptionPane.showInputDialog("Masukkan port:", "5000").trim());
+            } catch (NullPointerException | NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Port berupa angka");
+                return;
+            }
+            ClientRuntime runtime = open("localhost", port, ServerConfig.fromSystemProperties(), false);
+            runtime.open(jumlahClient);
+            ClientViewer.show(runtime);
+            return;
+        }
+
+        boolean headless = GraphicsEnvironment.isHeadless();
+        String host = "localhost";
+        int port = 5000;
+        int sessions = Integer.getInteger("chat.client.sessions", 1);
+        int seconds = Integer.getInteger("chat.client.seconds", 0);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--headless" -> headless = true;
+                    case "--sessions" -> sessions = Integer.parseInt(args[++i]);
+                    case "--host" -> host = args[++i];
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--script" -> System.setProperty("chat.client.script", args[++i]);
+                    case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println((e instanceof ArrayIndexOutOfBoundsException ? "Missing value" : e.getMessage()) +
+                    "\nUsage: java mainClient [--headless] [--sessions N] [--host H] [--port N] [--script file] [--seconds N]");
+            System.exit(2);
+            return;
+        }
 
-        for (int i = 0; i < jumlahClient; i++) {
-            new Thread(() -> new ClientGUI("localhost")).start();
+        ServerConfig options = ServerConfig.fromSystemProperties();
+        ClientRuntime runtime = open(host, port, options, headless);
+        runtime.open(sessions);
+        if (!headless) {
+            ClientViewer.show(runtime);
+            return;
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(runtime::close, "ClientShutdown"));
+        System.out.println("Running " + sessions + " sessions against " + host + ":" + port);
+        runtime.report(System.out, options.getInt("chat.client.reportSeconds", 10), seconds);
+        runtime.close();
+        runtime.awaitFinished(5000);
+        System.out.println(runtime);
+        System.exit(0);
     }
-}
 
+    private static ClientRuntime open(String host, int port, ServerConfig options, boolean scripted) {
+        try {
+            return ClientRuntime.fromConfig(host, port, options, scripted);
+        } catch (IOException e) {
+            System.err.println("Cannot read script: " + e.getMessage());
+            System.exit(2);
+            return null;
+        }
+    }
+}
@@ -1,14 +1,58 @@
 import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
 
+// Usage: java mainServer [--headless] [--port N] [--config server.properties] [--admin-port N]
+// Without arguments the port is asked for in a dialog; without a display, or with
+// --headless, the server runs in the terminal.
 public class mainServer {
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            try{
-                int port = Integer.parseInt(JOptionPane.showInputDialog("Enter port:"));
-                new ServerGUI(port);
-            } catch (NumberFormatException e) {
-                JOptionPane.showMessageDialog(null, "Port berupa angka");
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0 && !GraphicsEnvironment.isHeadless()) {
+            SwingUtilities.invokeLater(() -> {
+                try{
+                    int port = Integer.parseInt(JOptionPane.showInputDialog("Enter port:"));
+                    new ServerGUI(port);
+                } catch (NumberFormatException e) {
+                    JOptionPane.showMessageDialog(null, "Port berupa angka");
+                }
+            });
+            return;
+        }
+
+        boolean headless = GraphicsEnvironment.isHeadless();
+        Path configFile = null;
+        Properties overrides = new Properties();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--headless" -> headless = true;
+                    case "--port" -> overrides.setProperty("chat.port", String.valueOf(Integer.parseInt(args[++i])));
+                    case "--admin-port" -> overrides.setProperty("chat.admin.port", String.valueOf(Integer.parseInt(args[++i])));
+                    case "--config" -> configFile = Path.of(args[++i]);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
             }
-        });
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println((e instanceof ArrayIndexOutOfBoundsException ? "Missing value" : e.getMessage()) +
+                    "\nUsage: java mainServer [--headless] [--port N] [--config server.properties] [--admin-port N]");
+            System.exit(2);
+            return;
+        }
+
+        ServerConfig config;
+        try {
+            config = ServerConfig.load(configFile, overrides);
+        } catch (IOException e) {
+            System.err.println("Cannot read config " + configFile + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        if (headless) {
+            System.exit(HeadlessServer.run(config.getPort(), config) ? 0 : 1);
+        }
+        SwingUtilities.invokeLater(() -> new ServerGUI(config.getPort(), config));
     }
 }
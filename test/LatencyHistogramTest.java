@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    @Test
+    void valuesBelowSubBucketCountAreExact() {
+        for (long micros = 0; micros < 128; micros++) {
+            assertEquals(micros, LatencyHistogram.indexOf(micros));
+            assertEquals(micros, LatencyHistogram.valueOf((int) micros));
+        }
+    }
+
+    @Test
+    void everyValueFallsInABucketThatCoversIt() {
+        long[] samples = {128, 129, 255, 256, 257, 1_000, 4_095, 4_096, 65_537, 1_000_000, 123_456_789L,
+                Long.MAX_VALUE / 1000};
+        for (long micros : samples) {
+            int index = LatencyHistogram.indexOf(micros);
+            long upper = LatencyHistogram.valueOf(index);
+            long lower = index == 0 ? 0 : LatencyHistogram.valueOf(index - 1) + 1;
+            assertTrue(lower <= micros && micros <= upper, micros + " not in [" + lower + ", " + upper + "]");
+            // Within the advertised ~1.6%
+            assertTrue(upper - micros <= Math.max(1, micros / 62), micros + " reported as " + upper);
+        }
+    }
+
+    @Test
+    void bucketsAreContiguousAndIncreasing() {
+        long previous = -1;
+        for (int index = 0; index < 128 + 20 * 64; index++) {
+            long upper = LatencyHistogram.valueOf(index);
+            assertTrue(upper > previous);
+            assertEquals(index, LatencyHistogram.indexOf(previous + 1), "first value of bucket " + index);
+            assertEquals(index, LatencyHistogram.indexOf(upper), "last value of bucket " + index);
+            previous = upper;
+        }
+    }
+
+    @Test
+    void percentilesReportBucketUpperBoundCappedAtMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMillis(99));
+        for (int micros = 1; micros <= 100; micros++) {
+            histogram.recordNanos(micros * 1000L);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(0.050, histogram.percentileMillis(50), 1e-9);
+        assertEquals(0.099, histogram.percentileMillis(99), 1e-9);
+        assertEquals(0.100, histogram.percentileMillis(100), 1e-9);
+        assertEquals(0.0505, histogram.meanMillis(), 1e-9);
+
+        histogram.recordNanos(1_000_000_000L);
+        assertEquals(1000.0, histogram.maxMillis(), 1e-9);
+        assertEquals(1000.0, histogram.percentileMillis(100), 1e-9);
+    }
+
+    @Test
+    void recordsFromManyThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.recordNanos((i % 500) * 1000L);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.count());
+        assertEquals(0.499, histogram.maxMillis(), 1e-9);
+    }
+}
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDecoderTest {
+    private final List<String> lines = new ArrayList<>();
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void splitsOnLfAndCrLf() {
+        new LineDecoder().decode(bytes("halo\r\napa kabar\nterima kasih\n"), lines::add);
+        assertEquals(List.of("halo", "apa kabar", "terima kasih"), lines);
+    }
+
+    @Test
+    void keepsPartialLineUntilItsEnd() {
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(bytes("sela"), lines::add);
+        assertTrue(lines.isEmpty());
+        decoder.decode(bytes("mat pagi\r"), lines::add);
+        assertTrue(lines.isEmpty());
+        decoder.decode(bytes("\n"), lines::add);
+        assertEquals(List.of("selamat pagi"), lines);
+    }
+
+    @Test
+    void decodesMultiByteCharactersSplitAcrossReads() {
+        byte[] text = "kopi ☕ enak\n".getBytes(StandardCharsets.UTF_8);
+        LineDecoder decoder = new LineDecoder();
+        // Cut inside the three-byte encoding of the cup
+        decoder.decode(ByteBuffer.wrap(text, 0, 6), lines::add);
+        decoder.decode(ByteBuffer.wrap(text, 6, text.length - 6), lines::add);
+        assertEquals(List.of("kopi ☕ enak"), lines);
+    }
+
+    @Test
+    void inPlaceDecodingMatchesStrings() {
+        List<String> views = new ArrayList<>();
+        new LineDecoder().decodeInPlace(bytes("halo\nkopi ☕\n"), line -> views.add(line.toString()));
+        assertEquals(List.of("halo", "kopi ☕"), views);
+    }
+
+    @Test
+    void markerSwitchesToFrames() {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.writeBytes((WireFrame.MARKER + "\n").getBytes(StandardCharsets.UTF_8));
+        wire.writeBytes(WireFrame.encode(WireFrame.MESSAGE, "baris satu\nbaris dua"));
+        wire.writeBytes(WireFrame.encode(WireFrame.CONTROL, WireFrame.PING));
+        wire.writeBytes(WireFrame.encode(WireFrame.DISCONNECT, ""));
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(ByteBuffer.wrap(wire.toByteArray()), lines::add);
+
+        assertTrue(decoder.isFramed());
+        assertEquals(4, lines.size());
+        assertSame(LineDecoder.NEGOTIATED, lines.get(0));
+        assertEquals("baris satu\nbaris dua", lines.get(1));
+        assertSame(LineDecoder.PING, lines.get(2));
+        assertSame(LineDecoder.PEER_DISCONNECT, lines.get(3));
+    }
+
+    @Test
+    void framesArriveByteByByte() {
+        byte[] frame = WireFrame.encode(WireFrame.MESSAGE, "halo");
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(bytes(WireFrame.MARKER + "\n"), lines::add);
+        for (byte b : frame) {
+            decoder.decode(ByteBuffer.wrap(new byte[]{b}), lines::add);
+        }
+        assertEquals(List.of(LineDecoder.NEGOTIATED, "halo"), lines);
+    }
+
+    @Test
+    void markerOnlyCountsAsFirstLineOnServers() {
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(bytes("halo\n" + WireFrame.MARKER + "\n"), lines::add);
+        assertFalse(decoder.isFramed());
+        assertEquals(List.of("halo", WireFrame.MARKER), lines);
+
+        lines.clear();
+        LineDecoder client = new LineDecoder(false);
+        client.decode(bytes("Selamat datang\n" + WireFrame.MARKER + "\n"), lines::add);
+        assertTrue(client.isFramed());
+        assertSame(LineDecoder.NEGOTIATED, lines.get(1));
+    }
+
+    @Test
+    void rejectsOversizedFrame() {
+        ByteBuffer header = ByteBuffer.allocate(WireFrame.HEADER_BYTES);
+        header.put(WireFrame.MESSAGE).putInt(WireFrame.MAX_PAYLOAD + 1).flip();
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(bytes(WireFrame.MARKER + "\n"), lines::add);
+        decoder.decode(header, lines::add);
+        assertSame(LineDecoder.INVALID_FRAME, lines.get(lines.size() - 1));
+        assertFalse(header.hasRemaining());
+    }
+
+    @Test
+    void rejectsUnknownFrameType() {
+        LineDecoder decoder = new LineDecoder();
+        decoder.decode(bytes(WireFrame.MARKER + "\n"), lines::add);
+        decoder.decode(ByteBuffer.wrap(new byte[]{9, 0, 0, 0, 1, 'x'}), lines::add);
+        assertSame(LineDecoder.INVALID_FRAME, lines.get(lines.size() - 1));
+    }
+
+    @Test
+    void rejectsTextLineOverTheLimit() {
+        LineDecoder decoder = new LineDecoder();
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'a');
+        for (int sent = 0; sent <= WireFrame.MAX_PAYLOAD + 1 && lines.isEmpty(); sent += chunk.length) {
+            decoder.decode(ByteBuffer.wrap(chunk), lines::add);
+        }
+        assertEquals(1, lines.size());
+        assertSame(LineDecoder.INVALID_FRAME, lines.get(0));
+        // A failed stream stays failed
+        decoder.decode(bytes("halo\n"), lines::add);
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    void acceptsTextLineAtTheLimit() {
+        LineDecoder decoder = new LineDecoder();
+        ByteBuffer line = ByteBuffer.allocate(WireFrame.MAX_PAYLOAD + 2);
+        while (line.position() < WireFrame.MAX_PAYLOAD) {
+            line.put((byte) 'a');
+        }
+        line.put((byte) '\r').put((byte) '\n').flip();
+        decoder.decode(line, lines::add);
+        assertEquals(1, lines.size());
+        assertEquals(WireFrame.MAX_PAYLOAD, lines.get(0).length());
+    }
+}
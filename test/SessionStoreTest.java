@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Test
+    void removedSessionsAreGoneAndTheRestStillFound() {
+        SessionStore store = new SessionStore(100_000, HOUR);
+        List<Long> tokens = new ArrayList<>();
+        // Enough to grow every segment's index a few times
+        for (int i = 0; i < 20_000; i++) {
+            tokens.add(store.create(i));
+        }
+        Random random = new Random(42);
+        Set<Long> removed = new HashSet<>();
+        for (long token : tokens) {
+            if (random.nextInt(3) == 0) {
+                store.remove(token);
+                removed.add(token);
+            }
+        }
+
+        assertEquals(tokens.size() - removed.size(), store.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            long token = tokens.get(i);
+            SessionStore.Info info = store.info(token);
+            if (removed.contains(token)) {
+                assertNull(info);
+                assertFalse(store.attach(token));
+            } else {
+                assertNotNull(info, "session " + i + " lost after deletes");
+                assertEquals(i, info.number());
+            }
+        }
+    }
+
+    @Test
+    void freedRecordsAreReused() {
+        SessionStore store = new SessionStore(100_000, HOUR);
+        List<Long> tokens = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            tokens.add(store.create(i));
+        }
+        long offHeap = store.getOffHeapBytes();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < tokens.size(); i++) {
+                store.remove(tokens.get(i));
+                tokens.set(i, store.create(i));
+            }
+        }
+        assertEquals(5_000, store.size());
+        assertEquals(offHeap, store.getOffHeapBytes());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(i, store.info(tokens.get(i)).number());
+        }
+    }
+
+    @Test
+    void fullStoreEvictsDetachedSessionsOfAnySegment() throws InterruptedException {
+        SessionStore store = new SessionStore(64, HOUR);
+        List<Long> tokens = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            tokens.add(store.create(i));
+        }
+        assertEquals(0, store.create(64), "every session is attached");
+
+        // Two detached sessions make room for two new ones, whichever segments they hash to
+        store.detach(tokens.get(10));
+        Thread.sleep(2);
+        store.detach(tokens.get(20));
+        assertNotEquals(0, store.create(65));
+        assertTrue(store.info(tokens.get(10)) == null ^ store.info(tokens.get(20)) == null);
+        assertNotEquals(0, store.create(66));
+        assertNull(store.info(tokens.get(10)));
+        assertNull(store.info(tokens.get(20)));
+        assertEquals(0, store.create(67));
+        assertEquals(64, store.size());
+    }
+
+    @Test
+    void reattachedSessionIsNotEvicted() {
+        SessionStore store = new SessionStore(8, HOUR);
+        List<Long> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tokens.add(store.create(i));
+        }
+        store.detach(tokens.get(3));
+        assertTrue(store.attach(tokens.get(3)));
+        assertEquals(0, store.create(8));
+        assertNotNull(store.info(tokens.get(3)));
+    }
+
+    @Test
+    void sweepDropsOnlyExpiredDetachedSessions() throws InterruptedException {
+        SessionStore store = new SessionStore(1_000, 0);
+        List<Long> tokens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            long token = store.create(i);
+            tokens.add(token);
+            if (i % 2 == 0) {
+                store.detach(token);
+            }
+        }
+        Thread.sleep(2);
+        store.sweep();
+        assertEquals(50, store.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(i % 2 == 1, store.info(tokens.get(i)) != null);
+        }
+    }
+
+    @Test
+    void formatAndParseRoundTrip() {
+        long token = 0x0123456789abcdefL;
+        assertEquals("0123456789abcdef", SessionStore.format(token));
+        assertEquals(token, SessionStore.parse("0123456789ABCDEF"));
+        assertEquals(0, SessionStore.parse("0123"));
+        assertEquals(0, SessionStore.parse("0123456789abcdeg"));
+    }
+}